@@ -0,0 +1,194 @@
+/*
+ *   Copyright 2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.neptune.gremlin.driver.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.tinkerpop.gremlin.driver.Cluster;
+
+/**
+ * The command line, timing and reporting code shared by the benchmarks.
+ */
+final class BenchmarkSupport {
+    /**
+     * Command line option name for the db cluster/instance endpoint.
+     */
+    static final String ENDPOINT = "endpoint";
+    /**
+     * Command line option name for the db cluster/instance port.
+     */
+    static final String PORT = "port";
+    /**
+     * Command line option name for the whether to use ssl connection.
+     */
+    static final String SSL = "ssl";
+    /**
+     * Command line option name for the query to run.
+     */
+    static final String QUERY = "query";
+    /**
+     * Command line option name for the number of measured requests.
+     */
+    static final String REQUESTS = "requests";
+    /**
+     * Command line option name for the number of submitting threads.
+     */
+    static final String THREADS = "threads";
+
+    /**
+     * The default gremlin query to run.
+     */
+    static final String DEFAULT_QUERY = "g.V().limit(1).count()";
+
+    /**
+     * Default private constructor.
+     */
+    private BenchmarkSupport() {
+
+    }
+
+    /**
+     * Creates a cluster builder for the endpoint, port and ssl setting of the command line.
+     * @param cli the parsed command line.
+     * @return the cluster builder.
+     */
+    static Cluster.Builder clusterBuilder(final CommandLine cli) {
+        final Cluster.Builder builder = Cluster.build();
+        builder.addContactPoint(cli.getOptionValue(ENDPOINT));
+        builder.port(Integer.parseInt(cli.getOptionValue(PORT)));
+        builder.enableSsl(Boolean.parseBoolean(cli.getOptionValue(SSL, "false")));
+        return builder;
+    }
+
+    /**
+     * Runs a request a number of times on an executor.
+     * @param executor the executor running the requests.
+     * @param requests the total number of requests.
+     * @param request the request.
+     * @return the sorted latencies of the requests in nanos, followed by the total elapsed time in nanos.
+     * @throws Exception when a request fails.
+     */
+    static long[] run(final ExecutorService executor, final int requests, final Callable<?> request)
+            throws Exception {
+        final List<Future<Long>> futures = new ArrayList<>(requests);
+        final long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            futures.add(executor.submit(() -> {
+                final long requestStart = System.nanoTime();
+                request.call();
+                return System.nanoTime() - requestStart;
+            }));
+        }
+        final long[] latencies = new long[requests + 1];
+        for (int i = 0; i < requests; i++) {
+            latencies[i] = futures.get(i).get();
+        }
+        latencies[requests] = System.nanoTime() - start;
+        Arrays.sort(latencies, 0, requests);
+        return latencies;
+    }
+
+    /**
+     * Prints the throughput and latency percentiles of a run.
+     * @param name the name of the run.
+     * @param latencies the sorted latencies in nanos, followed by the total elapsed time in nanos.
+     */
+    static void report(final String name, final long[] latencies) {
+        final int requests = latencies.length - 1;
+        final double seconds = latencies[requests] / 1e9;
+        System.out.println(String.format("%s: %d requests in %.2f s, %.1f req/s, p50=%.2f ms, p99=%.2f ms, max=%.2f ms",
+                name, requests, seconds, requests / seconds,
+                toMillis(latencies[requests / 2]),
+                toMillis(latencies[Math.min(requests - 1, (int) (requests * 0.99))]),
+                toMillis(latencies[requests - 1])));
+    }
+
+    /**
+     * @param nanos a duration in nanos.
+     * @return the duration in fractional millis.
+     */
+    private static double toMillis(final long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Parses the command line args and returns a {@link CommandLine} with the properties.
+     * @param program the benchmark class, named in the usage message.
+     * @param args the command line args.
+     * @param options the options object containing the args that can be passed.
+     * @return a {@link CommandLine} instance with the option properties set.
+     */
+    static CommandLine parseArgs(final Class<?> program, final String[] args, final Options options) {
+        final CommandLineParser parser = new BasicParser();
+        final HelpFormatter formatter = new HelpFormatter();
+
+        try {
+            return parser.parse(options, args);
+        } catch (ParseException e) {
+            formatter.printHelp(program.getSimpleName(), options);
+            throw new RuntimeException("Invalid command line args");
+        }
+    }
+
+    /**
+     * Sets the CLI options shared by the benchmarks.
+     * @param requestsDescription the description of the number of measured requests.
+     * @param threadsDescription the description of the number of threads.
+     * @return {@link Options} that can be accepted by the benchmarks.
+     */
+    static Options setupCliOptions(final String requestsDescription, final String threadsDescription) {
+        final Options options = new Options();
+
+        final Option endpoint = new Option("e", ENDPOINT, true, "The db cluster/instance endpoint");
+        endpoint.setRequired(true);
+        options.addOption(endpoint);
+
+        final Option port = new Option("p", PORT, true, "The db cluster/instance port");
+        port.setRequired(true);
+        options.addOption(port);
+
+        final Option ssl = new Option("s", SSL, true, "Whether to enable ssl on the connection");
+        ssl.setRequired(false);
+        options.addOption(ssl);
+
+        final Option query = new Option("q", QUERY, true, "The gremlin query to run");
+        query.setRequired(false);
+        options.addOption(query);
+
+        final Option requests = new Option("n", REQUESTS, true, requestsDescription);
+        requests.setRequired(false);
+        options.addOption(requests);
+
+        final Option threads = new Option("t", THREADS, true, threadsDescription);
+        threads.setRequired(false);
+        options.addOption(threads);
+
+        return options;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ *   Copyright 2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.neptune.gremlin.driver.example;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.tinkerpop.gremlin.driver.Channelizer;
+import org.apache.tinkerpop.gremlin.driver.Client;
+import org.apache.tinkerpop.gremlin.driver.Cluster;
+import org.apache.tinkerpop.gremlin.driver.SigV4HttpChannelizer;
+import org.apache.tinkerpop.gremlin.driver.SigV4WebSocketChannelizer;
+import org.apache.tinkerpop.gremlin.driver.ser.Serializers;
+
+/**
+ * Compares the request throughput and latency of the {@link SigV4WebSocketChannelizer} and the
+ * {@link SigV4HttpChannelizer} against a Neptune cluster/instance with SigV4 auth enabled.
+ * <p>
+ * Each channelizer runs the same query, first for a number of warm-up requests and then for the measured requests,
+ * submitted by a fixed number of threads. The region and IAM credentials are configured as for
+ * {@link NeptuneGremlinSigV4Example}.
+ */
+public final class NeptuneGremlinSigV4Benchmark {
+    /**
+     * Default private constructor.
+     */
+    private NeptuneGremlinSigV4Benchmark() {
+
+    }
+
+    /**
+     * Runs the benchmark for each channelizer and prints the results.
+     * @param args program args.
+     * @throws Exception when a request fails.
+     */
+    public static void main(final String[] args) throws Exception {
+        final Options options = BenchmarkSupport.setupCliOptions("The number of measured requests per channelizer",
+                "The number of threads submitting requests");
+        final CommandLine cli = BenchmarkSupport.parseArgs(NeptuneGremlinSigV4Benchmark.class, args, options);
+        final String query = cli.getOptionValue(BenchmarkSupport.QUERY, BenchmarkSupport.DEFAULT_QUERY);
+        final int requests = Integer.parseInt(cli.getOptionValue(BenchmarkSupport.REQUESTS, "10000"));
+        final int threads = Integer.parseInt(cli.getOptionValue(BenchmarkSupport.THREADS, "16"));
+
+        for (Class<? extends Channelizer> channelizer
+                : Arrays.asList(SigV4WebSocketChannelizer.class, SigV4HttpChannelizer.class)) {
+            final Cluster.Builder builder = BenchmarkSupport.clusterBuilder(cli);
+            builder.channelizer(channelizer);
+            if (channelizer == SigV4HttpChannelizer.class) {
+                // The HTTP endpoint only serves GraphSON, and one request at a time per keep-alive connection, so
+                // spread them over the pool.
+                builder.serializer(Serializers.GRAPHSON_V3D0);
+                builder.maxInProcessPerConnection(1);
+                builder.minSimultaneousUsagePerConnection(0).maxSimultaneousUsagePerConnection(1);
+                builder.minConnectionPoolSize(threads).maxConnectionPoolSize(threads);
+            }
+
+            final Cluster cluster = builder.create();
+            final ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                final Client client = cluster.connect();
+                final Callable<?> request = () -> client.submit(query).all().get();
+                BenchmarkSupport.run(executor, Math.max(requests / 10, 1), request);
+                BenchmarkSupport.report(channelizer.getSimpleName(), BenchmarkSupport.run(executor, requests, request));
+            } finally {
+                executor.shutdownNow();
+                cluster.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ *   Copyright 2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.neptune.gremlin.driver.example;
+
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.tinkerpop.gremlin.driver.Cluster;
+import org.apache.tinkerpop.gremlin.driver.SigV4BlockingClient;
+import org.apache.tinkerpop.gremlin.driver.SigV4WebSocketChannelizer;
+
+/**
+ * Compares the request throughput and latency of synchronous queries submitted through the
+ * {@link SigV4BlockingClient} from a fixed pool of platform threads and from a virtual thread per request, against a
+ * Neptune cluster/instance with SigV4 auth enabled.
+ * <p>
+ * Virtual threads require a Java 21 runtime, on older runtimes only the platform thread pool is measured. The region
+ * and IAM credentials are configured as for {@link NeptuneGremlinSigV4Example}.
+ */
+public final class NeptuneGremlinSigV4VirtualThreadBenchmark {
+    /**
+     * Default private constructor.
+     */
+    private NeptuneGremlinSigV4VirtualThreadBenchmark() {
+
+    }
+
+    /**
+     * Runs the benchmark for each kind of thread and prints the results.
+     * @param args program args.
+     * @throws Exception when a request fails.
+     */
+    public static void main(final String[] args) throws Exception {
+        final Options options = BenchmarkSupport.setupCliOptions(
+                "The number of measured requests per kind of thread",
+                "The number of platform threads submitting requests");
+        final CommandLine cli = BenchmarkSupport.parseArgs(NeptuneGremlinSigV4VirtualThreadBenchmark.class, args,
+                options);
+        final String query = cli.getOptionValue(BenchmarkSupport.QUERY, BenchmarkSupport.DEFAULT_QUERY);
+        final int requests = Integer.parseInt(cli.getOptionValue(BenchmarkSupport.REQUESTS, "100000"));
+        final int threads = Integer.parseInt(cli.getOptionValue(BenchmarkSupport.THREADS, "64"));
+
+        final Cluster.Builder builder = BenchmarkSupport.clusterBuilder(cli);
+        builder.channelizer(SigV4WebSocketChannelizer.class);
+
+        final Cluster cluster = builder.create();
+        try (SigV4BlockingClient client = new SigV4BlockingClient(cluster.connect())) {
+            client.init();
+            final Callable<?> request = () -> client.submit(query);
+
+            final ExecutorService platformThreads = Executors.newFixedThreadPool(threads);
+            try {
+                BenchmarkSupport.run(platformThreads, Math.max(requests / 10, 1), request);
+                BenchmarkSupport.report(threads + " platform threads",
+                        BenchmarkSupport.run(platformThreads, requests, request));
+            } finally {
+                platformThreads.shutdownNow();
+            }
+
+            final Optional<ExecutorService> virtualThreads = SigV4BlockingClient.newVirtualThreadExecutor();
+            if (!virtualThreads.isPresent()) {
+                System.out.println("Virtual threads are not available on this runtime, skipping them");
+                return;
+            }
+            try {
+                BenchmarkSupport.run(virtualThreads.get(), Math.max(requests / 10, 1), request);
+                BenchmarkSupport.report("virtual thread per request",
+                        BenchmarkSupport.run(virtualThreads.get(), requests, request));
+            } finally {
+                virtualThreads.get().shutdownNow();
+            }
+        } finally {
+            cluster.close();
+        }
+    }
+}
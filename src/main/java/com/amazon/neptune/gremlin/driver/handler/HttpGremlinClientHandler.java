@@ -0,0 +1,315 @@
+/*
+ *   Copyright 2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.neptune.gremlin.driver.handler;
+
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.function.UnaryOperator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.ReferenceCountUtil;
+import org.apache.tinkerpop.gremlin.driver.MessageSerializer;
+import org.apache.tinkerpop.gremlin.driver.Tokens;
+import org.apache.tinkerpop.gremlin.driver.message.RequestMessage;
+import org.apache.tinkerpop.gremlin.driver.message.ResponseMessage;
+import org.apache.tinkerpop.gremlin.driver.message.ResponseStatusCode;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Translates {@link RequestMessage}s into signed HTTP POST requests to the Gremlin HTTP endpoint and the HTTP
+ * responses back into {@link ResponseMessage}s.
+ * <p>
+ * The HTTP endpoint does not echo the request id and does not guarantee that pipelined requests are answered in
+ * order, so a single request is in flight on the keep-alive connection at any time and further requests are queued
+ * until the response of the previous one has been read. Only script evaluation ({@link Tokens#OPS_EVAL}) without a
+ * session is supported over HTTP.
+ */
+@Slf4j
+public class HttpGremlinClientHandler extends ChannelDuplexHandler {
+    /**
+     * Maps the request arguments into the JSON body of the HTTP request.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Serializer for the responses, its mime type is sent as the accepted response type.
+     */
+    private final MessageSerializer serializer;
+
+    /**
+     * Path of the Gremlin HTTP endpoint.
+     */
+    private final String path;
+
+    /**
+     * Value of the Host header.
+     */
+    private final String host;
+
+    /**
+     * Signs each request just before it is written, so that a request queued behind a long one is not sent with an
+     * expired signature.
+     */
+    private final UnaryOperator<FullHttpRequest> signer;
+
+    /**
+     * Requests waiting for the response to the request in flight.
+     */
+    private final Queue<QueuedRequest> queued = new ArrayDeque<>();
+
+    /**
+     * Id of the request in flight, null if none.
+     */
+    private UUID inFlight;
+
+    /**
+     * Creates a new instance.
+     * @param serializer the serializer of the responses.
+     * @param host the value of the Host header, e.g. myhost.com:8182.
+     * @param path the path of the Gremlin HTTP endpoint, e.g. /gremlin.
+     * @param signer signs each request just before it is written.
+     */
+    public HttpGremlinClientHandler(final MessageSerializer serializer,
+                                    final String host,
+                                    final String path,
+                                    final UnaryOperator<FullHttpRequest> signer) {
+        this.serializer = serializer;
+        this.host = host;
+        this.path = path;
+        this.signer = signer;
+    }
+
+    @Override
+    public void write(final ChannelHandlerContext ctx, final Object msg, final ChannelPromise promise)
+            throws Exception {
+        if (!(msg instanceof RequestMessage)) {
+            super.write(ctx, msg, promise);
+            return;
+        }
+
+        final RequestMessage requestMessage = (RequestMessage) msg;
+        final FullHttpRequest request;
+        try {
+            request = encode(requestMessage);
+        } catch (Exception e) {
+            promise.setFailure(e);
+            return;
+        }
+
+        final QueuedRequest queuedRequest = new QueuedRequest(requestMessage.getRequestId(), request, promise);
+        if (inFlight == null) {
+            writeSigned(ctx, queuedRequest);
+        } else {
+            queued.add(queuedRequest);
+        }
+    }
+
+    @Override
+    public void channelRead(final ChannelHandlerContext ctx, final Object msg) throws Exception {
+        if (!(msg instanceof FullHttpResponse)) {
+            super.channelRead(ctx, msg);
+            return;
+        }
+
+        final UUID requestId = inFlight;
+        inFlight = null;
+        try {
+            if (requestId == null) {
+                log.warn("Discarding unexpected HTTP response on {}: {}", ctx.channel(), msg);
+            } else {
+                ctx.fireChannelRead(decode(requestId, (FullHttpResponse) msg));
+            }
+        } finally {
+            ReferenceCountUtil.release(msg);
+        }
+        writeNext(ctx);
+    }
+
+    @Override
+    public void channelInactive(final ChannelHandlerContext ctx) throws Exception {
+        QueuedRequest next;
+        while ((next = queued.poll()) != null) {
+            ReferenceCountUtil.release(next.request);
+            next.promise.tryFailure(new ClosedChannelException());
+        }
+        super.channelInactive(ctx);
+    }
+
+    /**
+     * Writes the next queued request, if any.
+     * @param ctx the handler context.
+     */
+    private void writeNext(final ChannelHandlerContext ctx) {
+        QueuedRequest next;
+        while ((next = queued.poll()) != null) {
+            if (writeSigned(ctx, next)) {
+                ctx.flush();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Signs a request and writes it as the request in flight.
+     * @param ctx the handler context.
+     * @param request the unsigned request.
+     * @return whether the request was written, false if it could not be signed and its write was failed.
+     */
+    private boolean writeSigned(final ChannelHandlerContext ctx, final QueuedRequest request) {
+        final FullHttpRequest signed;
+        try {
+            signed = signer.apply(request.request);
+        } catch (Exception e) {
+            ReferenceCountUtil.release(request.request);
+            request.promise.setFailure(e);
+            return false;
+        }
+        writeInFlight(ctx, request.requestId, request.promise);
+        ctx.write(signed, request.promise);
+        return true;
+    }
+
+    /**
+     * Marks a request as in flight until its response is read or, should its write fail, until the write fails, so
+     * that the queued requests are not held back by a request that never reached the server.
+     * @param ctx the handler context.
+     * @param requestId the id of the request.
+     * @param promise the promise of the write of the request.
+     */
+    private void writeInFlight(final ChannelHandlerContext ctx, final UUID requestId, final ChannelPromise promise) {
+        inFlight = requestId;
+        promise.addListener(f -> {
+            if (!f.isSuccess() && requestId.equals(inFlight)) {
+                inFlight = null;
+                writeNext(ctx);
+            }
+        });
+    }
+
+    /**
+     * Builds the HTTP request for a script evaluation.
+     * @param requestMessage the request.
+     * @return the unsigned HTTP request.
+     * @throws Exception when the request cannot be sent over HTTP or cannot be serialized.
+     */
+    private FullHttpRequest encode(final RequestMessage requestMessage) throws Exception {
+        if (!Tokens.OPS_EVAL.equals(requestMessage.getOp()) || !requestMessage.getProcessor().isEmpty()) {
+            throw new UnsupportedOperationException(String.format("Only sessionless %s requests are supported over "
+                    + "HTTP, got op=%s, processor=%s", Tokens.OPS_EVAL, requestMessage.getOp(),
+                    requestMessage.getProcessor()));
+        }
+
+        final Map<String, Object> body = new HashMap<>();
+        body.put(Tokens.ARGS_GREMLIN, requestMessage.getArgs().get(Tokens.ARGS_GREMLIN));
+        requestMessage.optionalArgs(Tokens.ARGS_BINDINGS).ifPresent(b -> body.put(Tokens.ARGS_BINDINGS, b));
+        requestMessage.optionalArgs(Tokens.ARGS_LANGUAGE).ifPresent(l -> body.put(Tokens.ARGS_LANGUAGE, l));
+        requestMessage.optionalArgs(Tokens.ARGS_ALIASES).ifPresent(a -> body.put(Tokens.ARGS_ALIASES, a));
+
+        final FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, path,
+                Unpooled.wrappedBuffer(MAPPER.writeValueAsBytes(body)));
+        request.headers().set(HttpHeaderNames.HOST, host);
+        request.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON);
+        request.headers().set(HttpHeaderNames.ACCEPT, serializer.mimeTypesSupported()[0]);
+        HttpUtil.setContentLength(request, request.content().readableBytes());
+        HttpUtil.setKeepAlive(request, true);
+        return request;
+    }
+
+    /**
+     * Builds the response message for the request in flight from the HTTP response.
+     * @param requestId the id of the request in flight.
+     * @param response the HTTP response.
+     * @return the response message.
+     * @throws Exception when the response cannot be deserialized.
+     */
+    private ResponseMessage decode(final UUID requestId, final FullHttpResponse response) throws Exception {
+        if (!HttpResponseStatus.OK.equals(response.status())) {
+            final ResponseStatusCode code;
+            if (HttpResponseStatus.UNAUTHORIZED.equals(response.status())) {
+                code = ResponseStatusCode.UNAUTHORIZED;
+            } else if (HttpResponseStatus.FORBIDDEN.equals(response.status())) {
+                code = ResponseStatusCode.FORBIDDEN;
+            } else {
+                code = ResponseStatusCode.SERVER_ERROR;
+            }
+            return ResponseMessage.build(requestId)
+                    .code(code)
+                    .statusMessage(String.format("%s: %s", response.status(),
+                            response.content().toString(StandardCharsets.UTF_8)))
+                    .create();
+        }
+
+        final ResponseMessage responseMessage = serializer.deserializeResponse(response.content());
+        return ResponseMessage.build(requestId)
+                .code(responseMessage.getStatus().getCode())
+                .statusMessage(responseMessage.getStatus().getMessage())
+                .statusAttributes(responseMessage.getStatus().getAttributes())
+                .result(responseMessage.getResult().getData())
+                .responseMetaData(responseMessage.getResult().getMeta())
+                .create();
+    }
+
+    /**
+     * A request waiting to be signed and written.
+     */
+    private static final class QueuedRequest {
+        /**
+         * Id of the request.
+         */
+        private final UUID requestId;
+
+        /**
+         * The unsigned HTTP request.
+         */
+        private final FullHttpRequest request;
+
+        /**
+         * The promise of the write.
+         */
+        private final ChannelPromise promise;
+
+        /**
+         * @param requestId id of the request.
+         * @param request the unsigned HTTP request.
+         * @param promise the promise of the write.
+         */
+        QueuedRequest(final UUID requestId, final FullHttpRequest request, final ChannelPromise promise) {
+            this.requestId = requestId;
+            this.request = request;
+            this.promise = promise;
+        }
+    }
+}
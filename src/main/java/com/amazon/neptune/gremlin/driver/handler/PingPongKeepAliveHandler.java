@@ -0,0 +1,297 @@
+/*
+ *   Copyright 2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.neptune.gremlin.driver.handler;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Drives the websocket ping/pong keep-alive of a single channel and measures the pong round-trip time.
+ * <p>
+ * Every ping carries the {@link System#nanoTime()} at which it was sent, which the server echoes back in the pong
+ * (see <a href=https://tools.ietf.org/html/rfc6455#section-5.5.3>IETF RFC 6455</a>), so the round-trip time can be
+ * computed without any per-ping bookkeeping. Pings are only sent once the channel has been quiet for a while: the
+ * idle interval applies when no requests are in flight and the (shorter) busy interval applies while requests are
+ * waiting for a response. A channel whose pong is late or missing is closed so that pending requests fail fast instead
+ * of running into their timeouts on a half-open connection; the eviction callback lets the owner of the channel
+ * replace the connection in its pool.
+ * <p>
+ * The handler must be placed after the websocket frame decoder and before TinkerPop's
+ * {@link org.apache.tinkerpop.gremlin.driver.handler.WebSocketClientHandler}, which swallows pong frames.
+ */
+@Slf4j
+public class PingPongKeepAliveHandler extends ChannelInboundHandlerAdapter {
+    /**
+     * Weight of the latest sample in the smoothed round-trip time, as used for the TCP SRTT (RFC 6298).
+     */
+    private static final double ROUND_TRIP_SMOOTHING_FACTOR = 0.125;
+
+    /**
+     * Value reported for round-trip times before the first pong has been received.
+     */
+    public static final long NO_ROUND_TRIP = -1L;
+
+    /**
+     * Quiet period after which an idle channel is pinged, in nanos.
+     */
+    private final long idleIntervalNanos;
+
+    /**
+     * Quiet period after which a channel with requests in flight is pinged, in nanos.
+     */
+    private final long busyIntervalNanos;
+
+    /**
+     * Time to wait for a pong before the channel is considered dead, in nanos.
+     */
+    private final long pongTimeoutNanos;
+
+    /**
+     * Tells whether requests are currently in flight on the channel.
+     */
+    private final BooleanSupplier busy;
+
+    /**
+     * Called when the channel is evicted, before it is closed.
+     */
+    private final Runnable onEvict;
+
+    /**
+     * The context of this handler, set once it is added to the pipeline.
+     */
+    private volatile ChannelHandlerContext ctx;
+
+    /**
+     * The periodic liveness check.
+     */
+    private volatile ScheduledFuture<?> checkFuture;
+
+    /**
+     * {@link System#nanoTime()} of the last message read from the channel.
+     */
+    private volatile long lastReadNanos = System.nanoTime();
+
+    /**
+     * {@link System#nanoTime()} of the last ping sent.
+     */
+    private volatile long pingSentNanos;
+
+    /**
+     * Whether a ping has been sent for which no pong has been received yet.
+     */
+    private volatile boolean awaitingPong;
+
+    /**
+     * Round-trip time of the last pong, in nanos.
+     */
+    private volatile long lastRoundTripNanos = NO_ROUND_TRIP;
+
+    /**
+     * Exponentially smoothed round-trip time of the pongs, in nanos.
+     */
+    private volatile long smoothedRoundTripNanos = NO_ROUND_TRIP;
+
+    /**
+     * Creates a new instance.
+     * @param idleIntervalMillis quiet period after which an idle channel is pinged.
+     * @param busyIntervalMillis quiet period after which a channel with requests in flight is pinged.
+     * @param pongTimeoutMillis time to wait for a pong before the channel is closed.
+     * @param busy tells whether requests are currently in flight on the channel.
+     * @param onEvict called on the event loop when the channel is evicted, before it is closed.
+     */
+    public PingPongKeepAliveHandler(final long idleIntervalMillis,
+                                    final long busyIntervalMillis,
+                                    final long pongTimeoutMillis,
+                                    final BooleanSupplier busy,
+                                    final Runnable onEvict) {
+        if (idleIntervalMillis <= 0 || busyIntervalMillis <= 0 || pongTimeoutMillis <= 0) {
+            throw new IllegalArgumentException(String.format("Keep-alive intervals and pong timeout must be positive "
+                    + "(idle=%s, busy=%s, pongTimeout=%s)", idleIntervalMillis, busyIntervalMillis, pongTimeoutMillis));
+        }
+        this.idleIntervalNanos = TimeUnit.MILLISECONDS.toNanos(idleIntervalMillis);
+        this.busyIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.min(busyIntervalMillis, idleIntervalMillis));
+        this.pongTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(pongTimeoutMillis);
+        this.busy = busy;
+        this.onEvict = onEvict;
+    }
+
+    /**
+     * Starts the periodic liveness check. Should be called once the websocket handshake is complete.
+     */
+    public void start() {
+        final ChannelHandlerContext context = this.ctx;
+        if (context == null || checkFuture != null) {
+            return;
+        }
+        final long period = Math.min(busyIntervalNanos, pongTimeoutNanos);
+        checkFuture = context.executor().scheduleAtFixedRate(this::check, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Creates a ping frame carrying the current time. Only the pings sent by the handler itself mark a pong as
+     * outstanding, so a frame created here that is never sent does not get the channel evicted.
+     * @return the ping frame.
+     */
+    public PingWebSocketFrame newPing() {
+        return new PingWebSocketFrame(Unpooled.copyLong(System.nanoTime()));
+    }
+
+    /**
+     * @return the round-trip time of the last pong in nanos, or {@link #NO_ROUND_TRIP} if none was received yet.
+     */
+    public long getLastRoundTripNanos() {
+        return lastRoundTripNanos;
+    }
+
+    /**
+     * @return the smoothed pong round-trip time in nanos, or {@link #NO_ROUND_TRIP} if none was received yet.
+     */
+    public long getSmoothedRoundTripNanos() {
+        return smoothedRoundTripNanos;
+    }
+
+    @Override
+    public void handlerAdded(final ChannelHandlerContext context) {
+        this.ctx = context;
+    }
+
+    @Override
+    public void handlerRemoved(final ChannelHandlerContext context) {
+        stop();
+    }
+
+    @Override
+    public void channelInactive(final ChannelHandlerContext context) throws Exception {
+        stop();
+        super.channelInactive(context);
+    }
+
+    @Override
+    public void channelRead(final ChannelHandlerContext context, final Object msg) throws Exception {
+        final long now = System.nanoTime();
+        lastReadNanos = now;
+        if (msg instanceof PongWebSocketFrame) {
+            onPong(context, ((PongWebSocketFrame) msg).content(), now);
+        }
+        super.channelRead(context, msg);
+    }
+
+    /**
+     * Records the round-trip time of a pong and closes the channel if the pong arrived too late.
+     * @param context the handler context.
+     * @param content the application data echoed by the server.
+     * @param now the time the pong was read.
+     */
+    private void onPong(final ChannelHandlerContext context, final ByteBuf content, final long now) {
+        // Unsolicited pongs and pongs to pings sent before reads were paused say nothing about the round-trip time.
+        if (!awaitingPong) {
+            return;
+        }
+        awaitingPong = false;
+
+        // Fall back to the last ping sent for a pong without the expected payload.
+        final long sentNanos = content.readableBytes() == Long.BYTES
+                ? content.getLong(content.readerIndex())
+                : pingSentNanos;
+
+        final long roundTrip = now - sentNanos;
+        if (roundTrip < 0) {
+            return;
+        }
+        lastRoundTripNanos = roundTrip;
+        final long smoothed = smoothedRoundTripNanos;
+        smoothedRoundTripNanos = smoothed == NO_ROUND_TRIP
+                ? roundTrip
+                : (long) (smoothed + ROUND_TRIP_SMOOTHING_FACTOR * (roundTrip - smoothed));
+        log.debug("Pong received on {} after {} us", context.channel(), TimeUnit.NANOSECONDS.toMicros(roundTrip));
+
+        if (roundTrip > pongTimeoutNanos) {
+            evict(context, "late");
+        }
+    }
+
+    /**
+     * Evicts the channel if an outstanding pong timed out, otherwise pings the channel if it has been quiet for
+     * longer than the interval matching its current load.
+     */
+    private void check() {
+        final ChannelHandlerContext context = this.ctx;
+        if (context == null || !context.channel().isActive()) {
+            return;
+        }
+
+        // Pongs are not read while reads are paused for backpressure, so liveness cannot be judged until they resume.
+        if (!context.channel().config().isAutoRead()) {
+            awaitingPong = false;
+            return;
+        }
+
+        final long now = System.nanoTime();
+        if (awaitingPong) {
+            if (now - pingSentNanos > pongTimeoutNanos) {
+                evict(context, "missing");
+            }
+            return;
+        }
+
+        final long interval = busy.getAsBoolean() ? busyIntervalNanos : idleIntervalNanos;
+        if (now - lastReadNanos >= interval) {
+            log.debug("Sending keep-alive ping on {}", context.channel());
+            pingSentNanos = now;
+            awaitingPong = true;
+            context.writeAndFlush(new PingWebSocketFrame(Unpooled.copyLong(now)))
+                    .addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+        }
+    }
+
+    /**
+     * Notifies the eviction callback and closes the channel after a late or missing pong.
+     * @param context the handler context.
+     * @param reason why the pong is considered failed.
+     */
+    private void evict(final ChannelHandlerContext context, final String reason) {
+        log.warn("Closing {} as the keep-alive pong is {} (timeout {} ms)", context.channel(), reason,
+                TimeUnit.NANOSECONDS.toMillis(pongTimeoutNanos));
+        stop();
+        try {
+            onEvict.run();
+        } catch (RuntimeException e) {
+            log.warn("Eviction callback failed for {}", context.channel(), e);
+        }
+        context.close();
+    }
+
+    /**
+     * Cancels the periodic liveness check.
+     */
+    private void stop() {
+        final ScheduledFuture<?> future = checkFuture;
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *   Copyright 2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.neptune.gremlin.driver.handler;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Pauses reading from the channel while any registered consumer has buffered more results than it wants to prefetch,
+ * and resumes reading once all of them have drained below their limit.
+ * <p>
+ * The handler must be placed after the response decoder and before the handler that hands the results to the
+ * consumers, so that the saturation is checked right after each response has been buffered. Pausing applies to the
+ * whole channel, i.e. to every request in flight on it, and also holds back the keep-alive pongs.
+ */
+@Slf4j
+public class ReadBackpressureHandler extends ChannelInboundHandlerAdapter {
+    /**
+     * The saturation checks of the registered consumers.
+     */
+    private final Map<Object, BooleanSupplier> saturationChecks = new ConcurrentHashMap<>();
+
+    /**
+     * The context of this handler, set once it is added to the pipeline.
+     */
+    private volatile ChannelHandlerContext ctx;
+
+    /**
+     * Registers a consumer.
+     * @param key identifies the consumer, e.g. its request id.
+     * @param saturated tells whether the consumer has buffered as many results as it wants to.
+     */
+    public void register(final Object key, final BooleanSupplier saturated) {
+        saturationChecks.put(key, saturated);
+    }
+
+    /**
+     * Unregisters a consumer and resumes reading if no other consumer is saturated.
+     * @param key identifies the consumer.
+     */
+    public void unregister(final Object key) {
+        if (saturationChecks.remove(key) != null) {
+            resume();
+        }
+    }
+
+    /**
+     * Resumes reading if no registered consumer is saturated. Should be called whenever a consumer has drained some of
+     * its buffered results.
+     */
+    public void resume() {
+        final ChannelHandlerContext context = this.ctx;
+        if (context == null || context.channel().config().isAutoRead()) {
+            return;
+        }
+        context.executor().execute(() -> {
+            if (!context.channel().config().isAutoRead() && !isSaturated()) {
+                log.debug("Resuming reads on {}", context.channel());
+                context.channel().config().setAutoRead(true);
+            }
+        });
+    }
+
+    @Override
+    public void handlerAdded(final ChannelHandlerContext context) {
+        this.ctx = context;
+    }
+
+    @Override
+    public void channelRead(final ChannelHandlerContext context, final Object msg) throws Exception {
+        super.channelRead(context, msg);
+        if (context.channel().config().isAutoRead() && isSaturated()) {
+            log.debug("Pausing reads on {}", context.channel());
+            context.channel().config().setAutoRead(false);
+        }
+    }
+
+    /**
+     * @return whether any registered consumer is saturated.
+     */
+    private boolean isSaturated() {
+        for (BooleanSupplier saturated : saturationChecks.values()) {
+            if (saturated.getAsBoolean()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
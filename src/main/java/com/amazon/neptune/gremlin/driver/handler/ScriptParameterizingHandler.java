@@ -0,0 +1,98 @@
+/*
+ *   Copyright 2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.neptune.gremlin.driver.handler;
+
+import java.util.Collections;
+import java.util.Map;
+
+import com.amazon.neptune.gremlin.driver.script.ScriptParameterizer;
+import com.amazon.neptune.gremlin.driver.script.ScriptParameterizer.ParameterizedScript;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import org.apache.tinkerpop.gremlin.driver.Tokens;
+import org.apache.tinkerpop.gremlin.driver.message.RequestMessage;
+
+/**
+ * Rewrites the literals of the Gremlin-Groovy scripts of outgoing {@link RequestMessage}s into bindings with a
+ * {@link ScriptParameterizer}, keeping the request id so that the responses are correlated as before. Bytecode
+ * requests and scripts in other languages are written as they are. The handler is stateless and can be shared by
+ * the connections of a cluster.
+ */
+@ChannelHandler.Sharable
+public class ScriptParameterizingHandler extends ChannelOutboundHandlerAdapter {
+    /**
+     * The language the scripts are rewritten for.
+     */
+    private static final String GREMLIN_GROOVY = "gremlin-groovy";
+
+    /**
+     * Rewrites the scripts.
+     */
+    private final ScriptParameterizer parameterizer;
+
+    /**
+     * Creates a new instance.
+     * @param parameterizer rewrites the scripts.
+     */
+    public ScriptParameterizingHandler(final ScriptParameterizer parameterizer) {
+        this.parameterizer = parameterizer;
+    }
+
+    @Override
+    public void write(final ChannelHandlerContext ctx, final Object msg, final ChannelPromise promise)
+            throws Exception {
+        ctx.write(msg instanceof RequestMessage ? parameterize((RequestMessage) msg) : msg, promise);
+    }
+
+    /**
+     * @return the parameterizer rewriting the scripts.
+     */
+    public ScriptParameterizer getParameterizer() {
+        return parameterizer;
+    }
+
+    /**
+     * @param request a request.
+     * @return the request with its script parameterized, or the same request if it has no script to rewrite.
+     */
+    private RequestMessage parameterize(final RequestMessage request) {
+        if (!Tokens.OPS_EVAL.equals(request.getOp())) {
+            return request;
+        }
+        final Object gremlin = request.getArgs().get(Tokens.ARGS_GREMLIN);
+        if (!(gremlin instanceof String)) {
+            return request;
+        }
+        final String language = request.<String>optionalArgs(Tokens.ARGS_LANGUAGE).orElse(GREMLIN_GROOVY);
+        if (!GREMLIN_GROOVY.equals(language)) {
+            return request;
+        }
+
+        final Map<String, Object> bindings =
+                request.<Map<String, Object>>optionalArgs(Tokens.ARGS_BINDINGS).orElse(Collections.emptyMap());
+        final ParameterizedScript parameterized = parameterizer.parameterize((String) gremlin, bindings);
+        if (parameterized.getBindings() == bindings) {
+            return request;
+        }
+        return RequestMessage.from(request)
+                .addArg(Tokens.ARGS_GREMLIN, parameterized.getScript())
+                .addArg(Tokens.ARGS_BINDINGS, parameterized.getBindings())
+                .create();
+    }
+}
@@ -0,0 +1,566 @@
+/*
+ *   Copyright 2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.neptune.gremlin.driver.script;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rewrites the literals of Gremlin-Groovy scripts, i.e. strings, ids and numbers, into bindings, so that scripts that
+ * only differ in their literals become the same template and reuse one compiled script in the script cache of the
+ * server. For example {@code g.V('id-123').has('age', gt(30))} becomes {@code g.V(_lit0).has(_lit1, gt(_lit2))} with
+ * the bindings {@code _lit0='id-123', _lit1='age', _lit2=30}.
+ * <p>
+ * Numbers are bound with the type Groovy gives the literal, e.g. {@code 30} as an {@link Integer}, {@code 30L} as a
+ * {@link Long} and {@code 1.5} as a {@link BigDecimal}. Map keys are bound in parentheses, e.g. {@code ['age': 29]}
+ * becomes {@code [(_lit0): _lit1]}, as Groovy reads an unquoted key as a string. Interpolated double-quoted strings,
+ * quoted member names such as {@code m.'a'}, hex, octal and binary numbers and numbers adjacent to a dot are left as
+ * they are. Scripts with triple-quoted strings, a {@code /} outside comments, which could start a slashy string, or
+ * unterminated literals, and scripts or bindings already using the {@link #BINDING_PREFIX}, are not rewritten at all.
+ * <p>
+ * The rewrite of recent scripts is memoized in a bounded LRU cache. The distinct templates submitted are counted, so
+ * that the template cardinality of a workload can be reported; a cardinality close to the number of submissions
+ * means the scripts differ in more than their literals. An instance is thread-safe and meant to be shared.
+ */
+public class ScriptParameterizer {
+    /**
+     * Prefix of the names of the bindings added for the literals.
+     */
+    public static final String BINDING_PREFIX = "_lit";
+
+    /**
+     * Default number of rewritten scripts to cache.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+
+    /**
+     * Scripts longer than this are rewritten on every submission, so that the cache does not retain large scripts.
+     */
+    public static final int MAX_CACHED_SCRIPT_LENGTH = 16 * 1024;
+
+    /**
+     * Maximum number of distinct templates counted, further templates are not tracked.
+     */
+    public static final int MAX_TRACKED_TEMPLATES = 10000;
+
+    /**
+     * The rewritten scripts by original script.
+     */
+    private final Map<String, Template> cache;
+
+    /**
+     * The number of submissions by template.
+     */
+    private final ConcurrentMap<String, LongAdder> templateCounts = new ConcurrentHashMap<>();
+
+    /**
+     * Number of scripts found in the cache.
+     */
+    private final LongAdder cacheHits = new LongAdder();
+
+    /**
+     * Number of scripts rewritten.
+     */
+    private final LongAdder cacheMisses = new LongAdder();
+
+    /**
+     * Creates a new instance with the default cache size.
+     */
+    public ScriptParameterizer() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param cacheSize the number of rewritten scripts to cache.
+     */
+    public ScriptParameterizer(final int cacheSize) {
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<String, Template>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Template> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * Rewrites the literals of a script into bindings.
+     * @param script the script.
+     * @param bindings the bindings of the script.
+     * @return the rewritten script and the bindings extended with its literals, or the same script and bindings if
+     * nothing was rewritten.
+     */
+    public ParameterizedScript parameterize(final String script, final Map<String, Object> bindings) {
+        for (String name : bindings.keySet()) {
+            if (name.startsWith(BINDING_PREFIX)) {
+                return new ParameterizedScript(script, bindings);
+            }
+        }
+
+        Template template = cache.get(script);
+        if (template != null) {
+            cacheHits.increment();
+        } else {
+            cacheMisses.increment();
+            template = Template.parse(script);
+            if (script.length() <= MAX_CACHED_SCRIPT_LENGTH) {
+                cache.put(script, template);
+            }
+        }
+        count(template.script);
+
+        if (template.literals.isEmpty()) {
+            return new ParameterizedScript(script, bindings);
+        }
+        final Map<String, Object> parameterized = new HashMap<>(bindings);
+        for (int i = 0; i < template.literals.size(); i++) {
+            parameterized.put(BINDING_PREFIX + i, template.literals.get(i));
+        }
+        return new ParameterizedScript(template.script, parameterized);
+    }
+
+    /**
+     * @return the number of distinct templates submitted, at most {@link #MAX_TRACKED_TEMPLATES}.
+     */
+    public int getTemplateCardinality() {
+        return templateCounts.size();
+    }
+
+    /**
+     * @return a snapshot of the number of submissions by template.
+     */
+    public Map<String, Long> getTemplateCounts() {
+        final Map<String, Long> counts = new HashMap<>();
+        templateCounts.forEach((template, count) -> counts.put(template, count.sum()));
+        return Collections.unmodifiableMap(counts);
+    }
+
+    /**
+     * @return the number of scripts whose rewrite was found in the cache.
+     */
+    public long getCacheHitCount() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * @return the number of scripts that were rewritten.
+     */
+    public long getCacheMissCount() {
+        return cacheMisses.sum();
+    }
+
+    /**
+     * Counts a submission of a template.
+     * @param template the template.
+     */
+    private void count(final String template) {
+        LongAdder count = templateCounts.get(template);
+        if (count == null) {
+            if (templateCounts.size() >= MAX_TRACKED_TEMPLATES) {
+                return;
+            }
+            count = templateCounts.computeIfAbsent(template, t -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    /**
+     * A script with its literals replaced by bindings, and the bindings to submit it with.
+     */
+    public static final class ParameterizedScript {
+        /**
+         * The script.
+         */
+        private final String script;
+
+        /**
+         * The bindings.
+         */
+        private final Map<String, Object> bindings;
+
+        /**
+         * @param script the script.
+         * @param bindings the bindings.
+         */
+        ParameterizedScript(final String script, final Map<String, Object> bindings) {
+            this.script = script;
+            this.bindings = bindings;
+        }
+
+        /**
+         * @return the script.
+         */
+        public String getScript() {
+            return script;
+        }
+
+        /**
+         * @return the bindings.
+         */
+        public Map<String, Object> getBindings() {
+            return bindings;
+        }
+    }
+
+    /**
+     * The template of a script and the literals it was built from.
+     */
+    private static final class Template {
+        /**
+         * The script with the literals replaced by binding names.
+         */
+        private final String script;
+
+        /**
+         * The literals, in the order of their binding names.
+         */
+        private final List<Object> literals;
+
+        /**
+         * @param script the script with the literals replaced by binding names.
+         * @param literals the literals.
+         */
+        private Template(final String script, final List<Object> literals) {
+            this.script = script;
+            this.literals = literals;
+        }
+
+        /**
+         * @param script a script.
+         * @return a template leaving the script as it is.
+         */
+        private static Template unchanged(final String script) {
+            return new Template(script, Collections.emptyList());
+        }
+
+        /**
+         * Scans a script for literals, copying comments, identifiers and everything else as they are.
+         * @param script the script.
+         * @return the template of the script.
+         */
+        static Template parse(final String script) {
+            final int length = script.length();
+            final StringBuilder template = new StringBuilder(length);
+            final List<Object> literals = new ArrayList<>();
+            int i = 0;
+            while (i < length) {
+                final char c = script.charAt(i);
+                final char next = i + 1 < length ? script.charAt(i + 1) : 0;
+                int end;
+                if (c == '/' && next == '/') {
+                    end = script.indexOf('\n', i);
+                    end = end < 0 ? length : end;
+                    template.append(script, i, end);
+                } else if (c == '/' && next == '*') {
+                    end = script.indexOf("*/", i + 2);
+                    if (end < 0) {
+                        return unchanged(script);
+                    }
+                    end += 2;
+                    template.append(script, i, end);
+                } else if (c == '/') {
+                    // A division or a slashy string, which cannot be told apart without parsing the script.
+                    return unchanged(script);
+                } else if (c == '\'' || c == '"') {
+                    if (script.startsWith("'''", i) || script.startsWith("\"\"\"", i)) {
+                        return unchanged(script);
+                    }
+                    final StringBuilder value = new StringBuilder();
+                    end = parseString(script, i, value);
+                    if (end < 0) {
+                        return unchanged(script);
+                    }
+                    if (isMemberName(script, i) || (c == '"' && isInterpolated(script, i, end))) {
+                        template.append(script, i, end);
+                    } else {
+                        appendBinding(template, literals.size(), isMapKey(script, end));
+                        literals.add(value.toString());
+                    }
+                } else if (isDigit(c)) {
+                    end = numberEnd(script, i);
+                    final boolean nextToDot = (i > 0 && script.charAt(i - 1) == '.')
+                            || (end < length && script.charAt(end) == '.');
+                    final Number value = nextToDot ? null : parseNumber(script, i, end);
+                    if (value == null) {
+                        template.append(script, i, end);
+                    } else {
+                        appendBinding(template, literals.size(), isMapKey(script, end));
+                        literals.add(value);
+                    }
+                } else if (Character.isJavaIdentifierStart(c)) {
+                    end = i + 1;
+                    while (end < length && Character.isJavaIdentifierPart(script.charAt(end))) {
+                        end++;
+                    }
+                    if (script.startsWith(BINDING_PREFIX, i)) {
+                        return unchanged(script);
+                    }
+                    template.append(script, i, end);
+                } else {
+                    end = i + 1;
+                    template.append(c);
+                }
+                i = end;
+            }
+            return literals.isEmpty()
+                    ? unchanged(script)
+                    : new Template(template.toString(), Collections.unmodifiableList(literals));
+        }
+
+        /**
+         * @param script the script.
+         * @param start the index of the opening quote of a string literal.
+         * @return whether the literal is a member name, i.e. follows {@code .}, {@code ?.}, {@code *.}, {@code .&} or
+         * {@code .@}.
+         */
+        private static boolean isMemberName(final String script, final int start) {
+            int i = start - 1;
+            while (i >= 0 && Character.isWhitespace(script.charAt(i))) {
+                i--;
+            }
+            if (i > 0 && (script.charAt(i) == '&' || script.charAt(i) == '@')) {
+                i--;
+            }
+            return i >= 0 && script.charAt(i) == '.';
+        }
+
+        /**
+         * Appends the name of a binding, in parentheses if it is a map key.
+         * @param template the template.
+         * @param index the index of the literal.
+         * @param mapKey whether the literal is a map key.
+         */
+        private static void appendBinding(final StringBuilder template, final int index, final boolean mapKey) {
+            if (mapKey) {
+                template.append('(').append(BINDING_PREFIX).append(index).append(')');
+            } else {
+                template.append(BINDING_PREFIX).append(index);
+            }
+        }
+
+        /**
+         * @param script the script.
+         * @param end the index after a literal.
+         * @return whether the literal is followed by a colon, i.e. is a map key or the middle of a ternary, where the
+         * parentheses are harmless.
+         */
+        private static boolean isMapKey(final String script, final int end) {
+            int i = end;
+            while (i < script.length() && Character.isWhitespace(script.charAt(i))) {
+                i++;
+            }
+            return i < script.length() && script.charAt(i) == ':';
+        }
+
+        /**
+         * Reads a single- or double-quoted string literal.
+         * @param script the script.
+         * @param start the index of the opening quote.
+         * @param value receives the value of the literal.
+         * @return the index after the closing quote, or -1 if the literal is unterminated or has an unsupported
+         * escape sequence.
+         */
+        private static int parseString(final String script, final int start, final StringBuilder value) {
+            final char quote = script.charAt(start);
+            int i = start + 1;
+            while (i < script.length()) {
+                final char c = script.charAt(i);
+                if (c == quote) {
+                    return i + 1;
+                }
+                if (c == '\n') {
+                    return -1;
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    i++;
+                    continue;
+                }
+                if (i + 1 >= script.length()) {
+                    return -1;
+                }
+                final char escaped = script.charAt(i + 1);
+                switch (escaped) {
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case '\\':
+                    case '\'':
+                    case '"':
+                    case '$':
+                        value.append(escaped);
+                        break;
+                    case 'u':
+                        if (i + 6 > script.length()) {
+                            return -1;
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(script.substring(i + 2, i + 6), 16));
+                        } catch (NumberFormatException e) {
+                            return -1;
+                        }
+                        i += 4;
+                        break;
+                    default:
+                        return -1;
+                }
+                i += 2;
+            }
+            return -1;
+        }
+
+        /**
+         * @param script the script.
+         * @param start the index of the opening quote of a double-quoted string literal.
+         * @param end the index after its closing quote.
+         * @return whether the literal has an unescaped {@code $}, which makes it an interpolated GString.
+         */
+        private static boolean isInterpolated(final String script, final int start, final int end) {
+            for (int i = start + 1; i < end - 1; i++) {
+                final char c = script.charAt(i);
+                if (c == '\\') {
+                    i++;
+                } else if (c == '$') {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @param script the script.
+         * @param start the index of the first digit of a number literal.
+         * @return the index after the literal, including any suffix or other trailing identifier characters.
+         */
+        private static int numberEnd(final String script, final int start) {
+            final int length = script.length();
+            int end = start;
+            while (end < length && isDigit(script.charAt(end))) {
+                end++;
+            }
+            if (end + 1 < length && script.charAt(end) == '.' && isDigit(script.charAt(end + 1))) {
+                end++;
+                while (end < length && isDigit(script.charAt(end))) {
+                    end++;
+                }
+            }
+            if (end < length && (script.charAt(end) == 'e' || script.charAt(end) == 'E')) {
+                int exponent = end + 1;
+                if (exponent < length && (script.charAt(exponent) == '+' || script.charAt(exponent) == '-')) {
+                    exponent++;
+                }
+                if (exponent < length && isDigit(script.charAt(exponent))) {
+                    end = exponent;
+                    while (end < length && isDigit(script.charAt(end))) {
+                        end++;
+                    }
+                }
+            }
+            while (end < length && Character.isJavaIdentifierPart(script.charAt(end))) {
+                end++;
+            }
+            return end;
+        }
+
+        /**
+         * Parses a number literal into the type Groovy gives it.
+         * @param script the script.
+         * @param start the index of the first digit of the literal.
+         * @param end the index after the literal.
+         * @return the value of the literal, or null if it is not a plain decimal literal.
+         */
+        private static Number parseNumber(final String script, final int start, final int end) {
+            int digitsEnd = end;
+            char suffix = 0;
+            if (!isDigit(script.charAt(end - 1))) {
+                suffix = Character.toLowerCase(script.charAt(end - 1));
+                digitsEnd = end - 1;
+            }
+            final String digits = script.substring(start, digitsEnd);
+            if (digits.isEmpty() || !isDigit(digits.charAt(digits.length() - 1))) {
+                return null;
+            }
+            for (int i = 0; i < digits.length(); i++) {
+                final char c = digits.charAt(i);
+                if (!isDigit(c) && c != '.' && c != 'e' && c != 'E' && c != '+' && c != '-') {
+                    return null;
+                }
+            }
+
+            final boolean decimal = digits.indexOf('.') >= 0 || digits.indexOf('e') >= 0 || digits.indexOf('E') >= 0;
+            if (!decimal && digits.length() > 1 && digits.charAt(0) == '0') {
+                // Octal literal.
+                return null;
+            }
+            try {
+                switch (suffix) {
+                    case 0:
+                        if (decimal) {
+                            return new BigDecimal(digits);
+                        }
+                        final BigInteger integer = new BigInteger(digits);
+                        if (integer.bitLength() < Integer.SIZE) {
+                            return integer.intValue();
+                        }
+                        return integer.bitLength() < Long.SIZE ? (Number) integer.longValue() : integer;
+                    case 'i':
+                        return decimal ? null : Integer.valueOf(digits);
+                    case 'l':
+                        return decimal ? null : Long.valueOf(digits);
+                    case 'g':
+                        return decimal ? new BigDecimal(digits) : new BigInteger(digits);
+                    case 'd':
+                        return Double.valueOf(digits);
+                    case 'f':
+                        return Float.valueOf(digits);
+                    default:
+                        return null;
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        /**
+         * @param c a character.
+         * @return whether it is an ASCII digit.
+         */
+        private static boolean isDigit(final char c) {
+            return c >= '0' && c <= '9';
+        }
+    }
+}
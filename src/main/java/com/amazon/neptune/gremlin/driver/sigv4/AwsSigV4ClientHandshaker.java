@@ -47,6 +47,11 @@ public class AwsSigV4ClientHandshaker extends WebSocketClientHandshaker13 {
      */
     private final AWSCredentialsProvider awsCredentialsProvider;
 
+    /**
+     * Signer shared with other connections, null if a signer is created for each handshake.
+     */
+    private final NeptuneNettyHttpSigV4Signer sigV4Signer;
+
     /**
      * Creates a new instance with default credentials provider (for backward compatibility).
      * @param webSocketURL - URL for web socket communications. e.g "ws://myhost.com/mypath". Subsequent web socket
@@ -103,6 +108,33 @@ public class AwsSigV4ClientHandshaker extends WebSocketClientHandshaker13 {
         this.awsCredentialsProvider = awsCredentialsProvider;
         this.sigV4PropertiesProvider = sigV4PropertiesProvider;
         this.sigV4Properties = loadProperties();
+        this.sigV4Signer = null;
+    }
+
+    /**
+     * Creates a new instance that signs the handshake with a signer shared with other connections, so that the
+     * properties and credentials are not held per connection.
+     * @param webSocketURL - URL for web socket communications. e.g "ws://myhost.com/mypath". Subsequent web socket
+     * frames will be sent to this URL.
+     * @param version - Version of web socket specification to use to connect to the server
+     * @param subprotocol - Sub protocol request sent to the server.
+     * @param allowExtensions - Allow extensions to be used in the reserved bits of the web socket frame
+     * @param customHeaders - Map of custom headers to add to the client request
+     * @param maxFramePayloadLength - Maximum length of a frame's payload
+     * @param sigV4Signer - a thread-safe signer for the region of the server
+     */
+    public AwsSigV4ClientHandshaker(final URI webSocketURL,
+                                    final WebSocketVersion version,
+                                    final String subprotocol,
+                                    final boolean allowExtensions,
+                                    final HttpHeaders customHeaders,
+                                    final int maxFramePayloadLength,
+                                    final NeptuneNettyHttpSigV4Signer sigV4Signer) {
+        super(webSocketURL, version, subprotocol, allowExtensions, customHeaders, maxFramePayloadLength);
+        this.awsCredentialsProvider = null;
+        this.sigV4PropertiesProvider = null;
+        this.sigV4Properties = null;
+        this.sigV4Signer = sigV4Signer;
     }
 
     /**
@@ -124,11 +156,12 @@ public class AwsSigV4ClientHandshaker extends WebSocketClientHandshaker13 {
     @Override
     protected FullHttpRequest newHandshakeRequest() {
         final FullHttpRequest request = super.newHandshakeRequest();
-        final NeptuneNettyHttpSigV4Signer sigV4Signer;
         try {
-            sigV4Signer = new NeptuneNettyHttpSigV4Signer(this.sigV4Properties.getServiceRegion(),
-                    awsCredentialsProvider);
-            sigV4Signer.signRequest(request);
+            final NeptuneNettyHttpSigV4Signer signer = this.sigV4Signer != null
+                    ? this.sigV4Signer
+                    : new NeptuneNettyHttpSigV4Signer(this.sigV4Properties.getServiceRegion(),
+                            awsCredentialsProvider);
+            signer.signRequest(request);
         } catch (NeptuneSigV4SignerException e) {
             throw new RuntimeException("Exception occurred while signing the request", e);
         }
@@ -0,0 +1,186 @@
+/*
+ *   Copyright 2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.neptune.gremlin.driver.sigv4;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.SignableRequest;
+import com.amazonaws.auth.AWS4Signer;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.http.HttpMethodName;
+
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.QueryStringDecoder;
+
+/**
+ * Signs Netty {@link FullHttpRequest}s with SigV4 for the Neptune HTTP endpoints.
+ * <p>
+ * An instance is meant to be created once and reused for every request: credentials are fetched from the
+ * (caching) {@link AWSCredentialsProvider} on each request, signing keys are cached by the {@link AWS4Signer} per day
+ * and the SHA-256 payload hashes of recently signed bodies are kept in a bounded LRU cache, so that repeated payloads
+ * are not hashed again.
+ */
+public class CachingNettyHttpSigV4Signer {
+    /**
+     * The service name used in the signature.
+     */
+    public static final String SERVICE_NAME = "neptune-db";
+
+    /**
+     * Default number of payload hashes to cache.
+     */
+    public static final int DEFAULT_PAYLOAD_HASH_CACHE_SIZE = 256;
+
+    /**
+     * Payloads larger than this are always hashed, so that the cache does not retain large bodies.
+     */
+    public static final int MAX_CACHED_PAYLOAD_LENGTH = 8 * 1024;
+
+    /**
+     * The signer, with the payload hash cache plugged in.
+     */
+    private final PayloadHashCachingSigner aws4Signer;
+
+    /**
+     * Credentials provider to use to generate signature.
+     */
+    private final AWSCredentialsProvider awsCredentialsProvider;
+
+    /**
+     * Creates a new instance with the default payload hash cache size.
+     * @param serviceRegion the region of the Neptune cluster, e.g. us-east-1.
+     * @param awsCredentialsProvider an AWS credentials provider to use to generate signature.
+     */
+    public CachingNettyHttpSigV4Signer(final String serviceRegion,
+                                       final AWSCredentialsProvider awsCredentialsProvider) {
+        this(serviceRegion, awsCredentialsProvider, DEFAULT_PAYLOAD_HASH_CACHE_SIZE);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param serviceRegion the region of the Neptune cluster, e.g. us-east-1.
+     * @param awsCredentialsProvider an AWS credentials provider to use to generate signature.
+     * @param payloadHashCacheSize the number of payload hashes to cache.
+     */
+    public CachingNettyHttpSigV4Signer(final String serviceRegion,
+                                       final AWSCredentialsProvider awsCredentialsProvider,
+                                       final int payloadHashCacheSize) {
+        this.aws4Signer = new PayloadHashCachingSigner(payloadHashCacheSize);
+        this.aws4Signer.setServiceName(SERVICE_NAME);
+        this.aws4Signer.setRegionName(serviceRegion);
+        this.awsCredentialsProvider = awsCredentialsProvider;
+    }
+
+    /**
+     * Adds the SigV4 headers (Host, x-amz-date, Authorization and x-amz-security-token for session credentials) to
+     * the request.
+     * @param endpoint the scheme, host and port the request is sent to, e.g. https://myhost.com:8182.
+     * @param request the request to sign.
+     */
+    public void signRequest(final URI endpoint, final FullHttpRequest request) {
+        final QueryStringDecoder uri = new QueryStringDecoder(request.uri());
+        final DefaultRequest<Void> signableRequest = new DefaultRequest<>(SERVICE_NAME);
+        signableRequest.setHttpMethod(HttpMethodName.fromValue(request.method().name()));
+        signableRequest.setEndpoint(endpoint);
+        signableRequest.setResourcePath(uri.path());
+        signableRequest.setParameters(uri.parameters());
+        for (Map.Entry<String, String> header : request.headers()) {
+            signableRequest.addHeader(header.getKey(), header.getValue());
+        }
+        signableRequest.setContent(new PayloadInputStream(ByteBufUtil.getBytes(request.content())));
+
+        try {
+            aws4Signer.sign(signableRequest, awsCredentialsProvider.getCredentials());
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Exception occurred while signing the request", e);
+        }
+
+        for (Map.Entry<String, String> header : signableRequest.getHeaders().entrySet()) {
+            request.headers().set(header.getKey(), header.getValue());
+        }
+    }
+
+    /**
+     * An {@link InputStream} over a request payload that gives access to the underlying bytes.
+     */
+    private static final class PayloadInputStream extends ByteArrayInputStream {
+        /**
+         * @param payload the request payload.
+         */
+        PayloadInputStream(final byte[] payload) {
+            super(payload);
+        }
+
+        /**
+         * @return the request payload.
+         */
+        byte[] payload() {
+            return buf;
+        }
+    }
+
+    /**
+     * An {@link AWS4Signer} that looks up the hash of small payloads in a bounded LRU cache.
+     */
+    private static final class PayloadHashCachingSigner extends AWS4Signer {
+        /**
+         * The hex encoded SHA-256 hashes by payload.
+         */
+        private final Map<ByteBuffer, String> payloadHashes;
+
+        /**
+         * @param cacheSize the number of payload hashes to cache.
+         */
+        PayloadHashCachingSigner(final int cacheSize) {
+            this.payloadHashes = Collections.synchronizedMap(new LinkedHashMap<ByteBuffer, String>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<ByteBuffer, String> eldest) {
+                    return size() > cacheSize;
+                }
+            });
+        }
+
+        @Override
+        protected String calculateContentHash(final SignableRequest<?> request) {
+            final InputStream content = request.getContent();
+            if (!(content instanceof PayloadInputStream)) {
+                return super.calculateContentHash(request);
+            }
+
+            final byte[] payload = ((PayloadInputStream) content).payload();
+            if (payload.length > MAX_CACHED_PAYLOAD_LENGTH) {
+                return super.calculateContentHash(request);
+            }
+
+            final ByteBuffer key = ByteBuffer.wrap(payload);
+            final String cached = payloadHashes.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            final String hash = super.calculateContentHash(request);
+            payloadHashes.put(key, hash);
+            return hash;
+        }
+    }
+}
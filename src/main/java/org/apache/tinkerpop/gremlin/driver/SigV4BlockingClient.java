@@ -0,0 +1,224 @@
+/*
+ *   Copyright 2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package org.apache.tinkerpop.gremlin.driver;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * A synchronous facade over a {@link Client} that is safe to call from virtual threads.
+ * <p>
+ * Every wait of the facade parks the calling thread through {@link CompletableFuture}, {@link ReentrantLock} or
+ * {@link Semaphore} rather than blocking inside a {@code synchronized} monitor, which would pin the carrier thread of
+ * a virtual thread. The connection setup of the driver blocks inside monitors, so when {@link #init()} is called from
+ * a virtual thread it runs on a platform thread while the caller parks. Requests beyond
+ * {@code maxConcurrentRequests} queue on a fair semaphore instead of timing out while waiting for a connection, so
+ * that tens of thousands of virtual threads can share one pool.
+ * <p>
+ * The multi-release jar carries a Java 21 layer under {@code META-INF/versions/21}, which detects virtual threads and
+ * provides {@link #newVirtualThreadExecutor()}. On older runtimes the facade behaves the same for platform threads.
+ */
+public class SigV4BlockingClient implements AutoCloseable {
+    /**
+     * Number of results read at a time when streaming them to a consumer.
+     */
+    public static final int RESULT_BATCH_SIZE = 64;
+
+    /**
+     * The client submitting the requests.
+     */
+    private final Client client;
+
+    /**
+     * Limits the number of requests in flight.
+     */
+    private final Semaphore permits;
+
+    /**
+     * Serializes the initialization of the client.
+     */
+    private final ReentrantLock initLock = new ReentrantLock();
+
+    /**
+     * Whether the client has been initialized.
+     */
+    private volatile boolean initialized;
+
+    /**
+     * Creates a new instance allowing as many requests in flight as the connection pool of the cluster can carry.
+     * @param client the client submitting the requests.
+     */
+    public SigV4BlockingClient(final Client client) {
+        this(client, client.getCluster().maxConnectionPoolSize() * client.getCluster().getMaxInProcessPerConnection());
+    }
+
+    /**
+     * Creates a new instance.
+     * @param client the client submitting the requests.
+     * @param maxConcurrentRequests the number of requests in flight, further requests wait for one to complete.
+     */
+    public SigV4BlockingClient(final Client client, final int maxConcurrentRequests) {
+        if (maxConcurrentRequests <= 0) {
+            throw new IllegalArgumentException("maxConcurrentRequests must be positive, got " + maxConcurrentRequests);
+        }
+        this.client = client;
+        this.permits = new Semaphore(maxConcurrentRequests, true);
+    }
+
+    /**
+     * @return an executor starting a new virtual thread per task, empty if the runtime has no virtual threads.
+     */
+    public static Optional<ExecutorService> newVirtualThreadExecutor() {
+        return SigV4VirtualThreads.newVirtualThreadPerTaskExecutor();
+    }
+
+    /**
+     * @return the client submitting the requests.
+     */
+    public Client getClient() {
+        return client;
+    }
+
+    /**
+     * Initializes the client, opening the connections of its pool. Called by the first request if not called before.
+     */
+    public void init() {
+        if (initialized) {
+            return;
+        }
+
+        initLock.lock();
+        try {
+            if (initialized) {
+                return;
+            }
+            if (SigV4VirtualThreads.isVirtual(Thread.currentThread())) {
+                final CompletableFuture<Void> done = new CompletableFuture<>();
+                final Thread thread = new Thread(() -> {
+                    try {
+                        client.init();
+                        done.complete(null);
+                    } catch (Throwable t) {
+                        done.completeExceptionally(t);
+                    }
+                }, "sigv4-blocking-client-init");
+                thread.setDaemon(true);
+                thread.start();
+                await(done);
+            } else {
+                client.init();
+            }
+            initialized = true;
+        } finally {
+            initLock.unlock();
+        }
+    }
+
+    /**
+     * Submits a script and waits for all its results.
+     * @param gremlin the script.
+     * @return the results.
+     */
+    public List<Result> submit(final String gremlin) {
+        return submit(gremlin, Collections.emptyMap());
+    }
+
+    /**
+     * Submits a script and waits for all its results.
+     * @param gremlin the script.
+     * @param bindings the bindings of the script.
+     * @return the results.
+     */
+    public List<Result> submit(final String gremlin, final Map<String, Object> bindings) {
+        init();
+        acquire();
+        try {
+            return await(client.submitAsync(gremlin, bindings).thenCompose(ResultSet::all));
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Submits a script and passes its results to a consumer as they arrive, in batches of at most
+     * {@link #RESULT_BATCH_SIZE}, waiting until all results have been consumed.
+     * @param gremlin the script.
+     * @param bindings the bindings of the script.
+     * @param consumer the consumer of the results.
+     */
+    public void submit(final String gremlin, final Map<String, Object> bindings, final Consumer<Result> consumer) {
+        init();
+        acquire();
+        try {
+            final ResultSet results = await(client.submitAsync(gremlin, bindings));
+            List<Result> batch;
+            while (!(batch = await(results.some(RESULT_BATCH_SIZE))).isEmpty()) {
+                batch.forEach(consumer);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes the client.
+     */
+    @Override
+    public void close() {
+        await(client.closeAsync());
+    }
+
+    /**
+     * Waits for a permit to submit a request.
+     */
+    private void acquire() {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting to submit the request", e);
+        }
+    }
+
+    /**
+     * Parks the calling thread until a future completes.
+     * @param future the future.
+     * @param <T> the type of the value of the future.
+     * @return the value of the future.
+     */
+    private static <T> T await(final CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the response", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+}
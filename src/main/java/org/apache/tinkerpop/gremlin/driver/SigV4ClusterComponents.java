@@ -0,0 +1,158 @@
+/*
+ *   Copyright 2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package org.apache.tinkerpop.gremlin.driver;
+
+import com.amazon.neptune.gremlin.driver.handler.ScriptParameterizingHandler;
+import com.amazon.neptune.gremlin.driver.script.ScriptParameterizer;
+import com.amazon.neptune.gremlin.driver.sigv4.CachingNettyHttpSigV4Signer;
+import com.amazon.neptune.gremlin.driver.sigv4.ChainedSigV4PropertiesProvider;
+import com.amazon.neptune.gremlin.driver.sigv4.SigV4Properties;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.neptune.auth.NeptuneNettyHttpSigV4Signer;
+import com.amazonaws.neptune.auth.NeptuneSigV4SignerException;
+
+import org.apache.tinkerpop.gremlin.driver.handler.WebSocketGremlinRequestEncoder;
+import org.apache.tinkerpop.gremlin.driver.handler.WebSocketGremlinResponseDecoder;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
+
+/**
+ * The stateless components of the SigV4 channelizers, created once per {@link Cluster} and shared by all its
+ * connections: the signers, holding the region and the credentials provider, the sharable websocket encoder and
+ * decoder, and the optional script parameterizing handler. The components are released with the cluster, so they
+ * must not reference it. Only the script parameterizer is exposed, for reporting.
+ */
+public final class SigV4ClusterComponents {
+    /**
+     * The components by cluster.
+     */
+    private static final Map<Cluster, SigV4ClusterComponents> COMPONENTS =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Signs the websocket handshakes.
+     */
+    private final NeptuneNettyHttpSigV4Signer handshakeSigner;
+
+    /**
+     * Signs the HTTP requests.
+     */
+    private final CachingNettyHttpSigV4Signer httpSigner;
+
+    /**
+     * Encodes the websocket requests.
+     */
+    private final WebSocketGremlinRequestEncoder requestEncoder;
+
+    /**
+     * Decodes the websocket responses.
+     */
+    private final WebSocketGremlinResponseDecoder responseDecoder;
+
+    /**
+     * Rewrites the literals of the scripts into bindings, null if disabled.
+     */
+    private final ScriptParameterizingHandler scriptParameterizingHandler;
+
+    /**
+     * @param serializer the serializer of the cluster.
+     * @param credentialsProvider the credentials provider used to sign the requests.
+     * @param scriptParameterizer rewrites the literals of the scripts into bindings, null to disable.
+     */
+    private SigV4ClusterComponents(final MessageSerializer serializer,
+                                   final AWSCredentialsProvider credentialsProvider,
+                                   final ScriptParameterizer scriptParameterizer) {
+        final SigV4Properties sigV4Properties = new ChainedSigV4PropertiesProvider().getSigV4Properties();
+        try {
+            this.handshakeSigner = new NeptuneNettyHttpSigV4Signer(sigV4Properties.getServiceRegion(),
+                    credentialsProvider);
+        } catch (NeptuneSigV4SignerException e) {
+            throw new RuntimeException("Exception occurred while creating the signer", e);
+        }
+        this.httpSigner = new CachingNettyHttpSigV4Signer(sigV4Properties.getServiceRegion(), credentialsProvider);
+        this.requestEncoder = new WebSocketGremlinRequestEncoder(true, serializer);
+        this.responseDecoder = new WebSocketGremlinResponseDecoder(serializer);
+        this.scriptParameterizingHandler = scriptParameterizer != null
+                ? new ScriptParameterizingHandler(scriptParameterizer)
+                : null;
+    }
+
+    /**
+     * Gets the components of a cluster, creating them for its first connection.
+     * @param cluster the cluster.
+     * @param credentialsProvider supplies the credentials provider when the components are created.
+     * @param scriptParameterizer supplies the script parameterizer, or null, when the components are created.
+     * @return the components of the cluster.
+     */
+    static SigV4ClusterComponents of(final Cluster cluster,
+                                     final Supplier<AWSCredentialsProvider> credentialsProvider,
+                                     final Supplier<ScriptParameterizer> scriptParameterizer) {
+        return COMPONENTS.computeIfAbsent(cluster, c -> new SigV4ClusterComponents(c.getSerializer(),
+                credentialsProvider.get(), scriptParameterizer.get()));
+    }
+
+    /**
+     * Gets the script parameterizer of a cluster that uses a SigV4 channelizer, to report e.g. its template
+     * cardinality.
+     * @param cluster the cluster.
+     * @return the script parameterizer, empty if disabled or if the cluster has no connection yet.
+     */
+    public static Optional<ScriptParameterizer> getScriptParameterizer(final Cluster cluster) {
+        return Optional.ofNullable(COMPONENTS.get(cluster))
+                .map(SigV4ClusterComponents::getScriptParameterizingHandler)
+                .map(ScriptParameterizingHandler::getParameterizer);
+    }
+
+    /**
+     * @return the signer of the websocket handshakes.
+     */
+    NeptuneNettyHttpSigV4Signer getHandshakeSigner() {
+        return handshakeSigner;
+    }
+
+    /**
+     * @return the signer of the HTTP requests.
+     */
+    CachingNettyHttpSigV4Signer getHttpSigner() {
+        return httpSigner;
+    }
+
+    /**
+     * @return the encoder of the websocket requests.
+     */
+    WebSocketGremlinRequestEncoder getRequestEncoder() {
+        return requestEncoder;
+    }
+
+    /**
+     * @return the decoder of the websocket responses.
+     */
+    WebSocketGremlinResponseDecoder getResponseDecoder() {
+        return responseDecoder;
+    }
+
+    /**
+     * @return the handler rewriting the literals of the scripts into bindings, null if disabled.
+     */
+    ScriptParameterizingHandler getScriptParameterizingHandler() {
+        return scriptParameterizingHandler;
+    }
+}
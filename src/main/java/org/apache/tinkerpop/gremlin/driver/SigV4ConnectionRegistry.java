@@ -0,0 +1,88 @@
+/*
+ *   Copyright 2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package org.apache.tinkerpop.gremlin.driver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps track of the open connections of the SigV4 channelizers per {@link Cluster}, so that connection level state
+ * can be reported for a whole cluster. Channelizers register once connected and unregister when their channel closes.
+ */
+final class SigV4ConnectionRegistry {
+    /**
+     * The open channelizers by cluster.
+     */
+    private static final ConcurrentMap<Cluster, Set<SigV4WebSocketChannelizer>> CHANNELIZERS =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Default private constructor.
+     */
+    private SigV4ConnectionRegistry() {
+
+    }
+
+    /**
+     * Registers a connected channelizer.
+     * @param cluster the cluster owning the connection.
+     * @param channelizer the channelizer of the connection.
+     */
+    static void register(final Cluster cluster, final SigV4WebSocketChannelizer channelizer) {
+        CHANNELIZERS.computeIfAbsent(cluster, c -> ConcurrentHashMap.newKeySet()).add(channelizer);
+    }
+
+    /**
+     * Unregisters a channelizer whose connection has been closed.
+     * @param cluster the cluster owning the connection.
+     * @param channelizer the channelizer of the connection.
+     */
+    static void unregister(final Cluster cluster, final SigV4WebSocketChannelizer channelizer) {
+        CHANNELIZERS.computeIfPresent(cluster, (c, channelizers) -> {
+            channelizers.remove(channelizer);
+            return channelizers.isEmpty() ? null : channelizers;
+        });
+    }
+
+    /**
+     * @param cluster the cluster.
+     * @return a snapshot of the channelizers of the open connections of the cluster.
+     */
+    static Collection<SigV4WebSocketChannelizer> channelizers(final Cluster cluster) {
+        final Set<SigV4WebSocketChannelizer> channelizers = CHANNELIZERS.get(cluster);
+        return channelizers == null
+                ? Collections.emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(channelizers));
+    }
+
+    /**
+     * @param cluster the cluster.
+     * @param requestId the id of a request.
+     * @return the channelizer of the connection the request is pending on, if any.
+     */
+    static Optional<SigV4WebSocketChannelizer> channelizerFor(final Cluster cluster, final UUID requestId) {
+        final Set<SigV4WebSocketChannelizer> channelizers = CHANNELIZERS.get(cluster);
+        return channelizers == null
+                ? Optional.empty()
+                : channelizers.stream().filter(c -> c.isPending(requestId)).findFirst();
+    }
+}
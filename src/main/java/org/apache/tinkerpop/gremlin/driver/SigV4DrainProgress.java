@@ -0,0 +1,83 @@
+/*
+ *   Copyright 2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package org.apache.tinkerpop.gremlin.driver;
+
+/**
+ * A snapshot of the drain progress of the connections of a {@link Cluster}, see
+ * {@link SigV4WebSocketChannelizer#getDrainProgress(Cluster)}.
+ */
+public final class SigV4DrainProgress {
+    /**
+     * Number of open connections, draining or not.
+     */
+    private final int openConnections;
+
+    /**
+     * Number of open connections that are draining.
+     */
+    private final int drainingConnections;
+
+    /**
+     * Number of requests in flight on the draining connections.
+     */
+    private final int pendingRequests;
+
+    /**
+     * Creates a new instance.
+     * @param openConnections number of open connections, draining or not.
+     * @param drainingConnections number of open connections that are draining.
+     * @param pendingRequests number of requests in flight on the draining connections.
+     */
+    SigV4DrainProgress(final int openConnections, final int drainingConnections, final int pendingRequests) {
+        this.openConnections = openConnections;
+        this.drainingConnections = drainingConnections;
+        this.pendingRequests = pendingRequests;
+    }
+
+    /**
+     * @return the number of open connections, draining or not.
+     */
+    public int getOpenConnections() {
+        return openConnections;
+    }
+
+    /**
+     * @return the number of open connections that are draining.
+     */
+    public int getDrainingConnections() {
+        return drainingConnections;
+    }
+
+    /**
+     * @return the number of requests in flight on the draining connections.
+     */
+    public int getPendingRequests() {
+        return pendingRequests;
+    }
+
+    /**
+     * @return whether no connection is draining anymore.
+     */
+    public boolean isDrained() {
+        return drainingConnections == 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SigV4DrainProgress{openConnections=%d, drainingConnections=%d, pendingRequests=%d}",
+                openConnections, drainingConnections, pendingRequests);
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ *   Copyright 2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package org.apache.tinkerpop.gremlin.driver;
+
+import com.amazon.neptune.gremlin.driver.handler.HttpGremlinClientHandler;
+import com.amazon.neptune.gremlin.driver.script.ScriptParameterizer;
+import com.amazon.neptune.gremlin.driver.sigv4.CachingNettyHttpSigV4Signer;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import org.apache.tinkerpop.gremlin.driver.Channelizer.AbstractChannelizer;
+import org.apache.tinkerpop.gremlin.driver.ser.MessageTextSerializer;
+import org.apache.tinkerpop.gremlin.driver.ser.Serializers;
+
+import java.net.URI;
+
+/**
+ * An {@link AbstractChannelizer} that sends the requests to the HTTP endpoint of Neptune instead of over a websocket,
+ * signing each request with SIGV4. This suits short, bursty request/response workloads, e.g. Lambda functions or
+ * sidecars, where a websocket handshake per cold connection does not pay off.
+ * <p>
+ * Each {@link Connection} of the pool is a persistent HTTP/1.1 keep-alive connection carrying one request at a time,
+ * further requests written to the same connection are queued until the previous response is read. Setting
+ * {@code maxInProcessPerConnection} and {@code maxSimultaneousUsagePerConnection} to 1, together with
+ * {@code minSimultaneousUsagePerConnection} to 0 as it must not exceed the maximum, therefore spreads concurrent
+ * requests over the pool instead. Only sessionless script submissions are supported, as the HTTP endpoint does not
+ * accept bytecode or sessions.
+ * <p>
+ * The HTTP endpoint only serves text serializers, so the cluster must be built with a {@link MessageTextSerializer}
+ * such as {@link Serializers#GRAPHSON_V3D0} rather than the default Gryo serializer, otherwise the connections fail
+ * to initialize.
+ */
+public class SigV4HttpChannelizer extends AbstractChannelizer {
+    /**
+     * Constant to denote the websocket protocol, which is how the {@link Cluster} builds the connection URIs.
+     */
+    private static final String WEB_SOCKET = "ws";
+
+    /**
+     * Constant to denote the websocket secure protocol.
+     */
+    private static final String WEB_SOCKET_SECURE = "wss";
+
+    /**
+     * Constant to denote the http protocol.
+     */
+    private static final String HTTP = "http";
+
+    /**
+     * Constant to denote the https protocol.
+     */
+    private static final String HTTPS = "https";
+
+    /**
+     * Name of the HttpCodec handler.
+     */
+    private static final String HTTP_CODEC = "http-codec";
+
+    /**
+     * Name of the HttpAggregator handler.
+     */
+    private static final String AGGREGATOR = "aggregator";
+
+    /**
+     * Name of the Gremlin HTTP client handler.
+     */
+    private static final String HTTP_GREMLIN_HANDLER = "http-gremlin-handler";
+
+    /**
+     * Name of the script parameterizing handler.
+     */
+    public static final String SCRIPT_PARAMETERIZING_HANDLER = "script-parameterizing-handler";
+
+    /**
+     * The components shared by the connections of the cluster: the signer and the script parameterizing handler.
+     */
+    private SigV4ClusterComponents components;
+
+    /**
+     * Signs the requests, shared by the connections of the cluster.
+     */
+    private CachingNettyHttpSigV4Signer signer;
+
+    /**
+     * The scheme, host and port the requests are sent to.
+     */
+    private URI endpoint;
+
+    /**
+     * Initializes the channelizer.
+     * @param connection the {@link Connection} object.
+     */
+    @Override
+    public void init(final Connection connection) {
+        super.init(connection);
+        if (!(cluster.getSerializer() instanceof MessageTextSerializer)) {
+            throw new IllegalStateException(String.format("The HTTP endpoint requires a %s, got %s",
+                    MessageTextSerializer.class.getSimpleName(), cluster.getSerializer().getClass().getName()));
+        }
+        final URI uri = connection.getUri();
+        final String scheme = supportsSsl() ? HTTPS : HTTP;
+        endpoint = URI.create(String.format("%s://%s:%s", scheme, uri.getHost(), uri.getPort()));
+        components = SigV4ClusterComponents.of(cluster, this::getCredentialsProvider,
+                this::createScriptParameterizer);
+        signer = components.getHttpSigner();
+    }
+
+    @Override
+    public boolean supportsSsl() {
+        final String scheme = connection.getUri().getScheme();
+        return WEB_SOCKET_SECURE.equalsIgnoreCase(scheme) || HTTPS.equalsIgnoreCase(scheme);
+    }
+
+    @Override
+    public void configure(final ChannelPipeline pipeline) {
+        final String scheme = connection.getUri().getScheme();
+        if (!WEB_SOCKET.equalsIgnoreCase(scheme) && !WEB_SOCKET_SECURE.equalsIgnoreCase(scheme)
+                && !HTTP.equalsIgnoreCase(scheme) && !HTTPS.equalsIgnoreCase(scheme)) {
+            throw new IllegalStateException(String.format(
+                    "Unsupported scheme (only %s:, %s:, %s: or %s: supported): %s",
+                    WEB_SOCKET, WEB_SOCKET_SECURE, HTTP, HTTPS, scheme));
+        }
+
+        final String path = connection.getUri().getPath();
+        final HttpGremlinClientHandler handler = new HttpGremlinClientHandler(
+                cluster.getSerializer(),
+                endpoint.getAuthority(),
+                path == null || path.isEmpty() ? "/" : path,
+                request -> {
+                    signer.signRequest(endpoint, request);
+                    return request;
+                });
+
+        pipeline.addLast(HTTP_CODEC, new HttpClientCodec());
+        pipeline.addLast(AGGREGATOR, new HttpObjectAggregator(cluster.connectionPoolSettings().maxContentLength));
+        pipeline.addLast(HTTP_GREMLIN_HANDLER, handler);
+        // Outbound requests pass the parameterizing handler before the HTTP client handler.
+        if (components.getScriptParameterizingHandler() != null) {
+            pipeline.addLast(SCRIPT_PARAMETERIZING_HANDLER, components.getScriptParameterizingHandler());
+        }
+    }
+
+    /**
+     * Creates the {@link ScriptParameterizer} of the cluster, disabled by default.
+     *
+     * @return the script parameterizer, or null to submit the scripts as they are.
+     * @see SigV4WebSocketChannelizer#createScriptParameterizer()
+     */
+    protected ScriptParameterizer createScriptParameterizer() {
+        return null;
+    }
+
+    /**
+     * This protected method provides a way for customizing the channelize through inheritance
+     * to override credentials used to establish sign requests. It is called once per {@link Cluster}, the provider
+     * is shared by all the connections of the cluster.
+     *
+     * @return credentials provider that will be used to generate SigV4 signatures
+     */
+    protected AWSCredentialsProvider getCredentialsProvider() {
+        return new DefaultAWSCredentialsProviderChain();
+    }
+}
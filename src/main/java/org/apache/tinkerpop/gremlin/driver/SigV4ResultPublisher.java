@@ -0,0 +1,390 @@
+/*
+ *   Copyright 2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package org.apache.tinkerpop.gremlin.driver;
+
+import com.amazon.neptune.gremlin.driver.handler.ReadBackpressureHandler;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A Reactive Streams {@link Publisher} of the results of a script submission, for consuming large results at constant
+ * memory.
+ * <p>
+ * The publisher is cold: every subscription submits the script anew. Results are fetched from the {@link ResultSet}
+ * as the subscriber signals demand, in batches of at most {@code prefetch} results. When the request runs on a
+ * connection of the {@link SigV4WebSocketChannelizer}, reading from the connection is paused while more than
+ * {@code prefetch} results are buffered and not yet requested, so the server stops streaming until the subscriber
+ * catches up. Note that pausing holds back every request in flight on that connection, so a dedicated
+ * {@link Client} with {@code maxInProcessPerConnection} set to 1 is recommended for streaming.
+ * <p>
+ * Cancelling a subscription before all results have been read closes the connection if this was the only request in
+ * flight on it, which stops the server-side stream; the pool then replaces the connection. Otherwise the remaining
+ * results are read and dropped, so that the other requests on the connection are not failed.
+ */
+@Slf4j
+public class SigV4ResultPublisher implements Publisher<Result> {
+    /**
+     * Default maximum number of results buffered ahead of the subscriber's demand.
+     */
+    public static final int DEFAULT_PREFETCH = 256;
+
+    /**
+     * The client to submit the script with.
+     */
+    private final Client client;
+
+    /**
+     * The script to submit.
+     */
+    private final String gremlin;
+
+    /**
+     * The bindings of the script.
+     */
+    private final Map<String, Object> bindings;
+
+    /**
+     * Maximum number of results buffered ahead of the subscriber's demand.
+     */
+    private final int prefetch;
+
+    /**
+     * Creates a new instance without bindings and with the default prefetch.
+     * @param client the client to submit the script with.
+     * @param gremlin the script to submit.
+     */
+    public SigV4ResultPublisher(final Client client, final String gremlin) {
+        this(client, gremlin, Collections.emptyMap(), DEFAULT_PREFETCH);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param client the client to submit the script with.
+     * @param gremlin the script to submit.
+     * @param bindings the bindings of the script.
+     * @param prefetch maximum number of results buffered ahead of the subscriber's demand.
+     */
+    public SigV4ResultPublisher(final Client client,
+                                final String gremlin,
+                                final Map<String, Object> bindings,
+                                final int prefetch) {
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("prefetch must be positive, got " + prefetch);
+        }
+        this.client = client;
+        this.gremlin = gremlin;
+        this.bindings = bindings;
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    public void subscribe(final Subscriber<? super Result> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber must not be null");
+        }
+        final ResultSubscription subscription = new ResultSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        client.submitAsync(gremlin, bindings).whenComplete(subscription::onSubmitted);
+    }
+
+    /**
+     * The subscription of a single subscriber, emitting the results of its own submission.
+     */
+    private final class ResultSubscription implements Subscription {
+        /**
+         * The subscriber.
+         */
+        private final Subscriber<? super Result> subscriber;
+
+        /**
+         * Outstanding demand of the subscriber.
+         */
+        private final AtomicLong requested = new AtomicLong();
+
+        /**
+         * Whether a batch is being fetched or a signal is being sent, which serializes the signals to the subscriber.
+         */
+        private final AtomicBoolean fetching = new AtomicBoolean();
+
+        /**
+         * Failure to signal to the subscriber, from the submission or an illegal request.
+         */
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        /**
+         * Set once the subscription is cancelled.
+         */
+        private volatile boolean cancelled;
+
+        /**
+         * Set once a terminal signal has been sent.
+         */
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        /**
+         * The results, set once the script has been submitted.
+         */
+        private volatile ResultSet resultSet;
+
+        /**
+         * The channelizer of the connection the request runs on, if it supports pausing reads.
+         */
+        private volatile SigV4WebSocketChannelizer channelizer;
+
+        /**
+         * Executes the signals to the subscriber off the connection's event loop.
+         */
+        private final Executor executor;
+
+        /**
+         * @param subscriber the subscriber.
+         */
+        ResultSubscription(final Subscriber<? super Result> subscriber) {
+            this.subscriber = subscriber;
+            this.executor = client.getCluster().executor();
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                failure.compareAndSet(null,
+                        new IllegalArgumentException("Requested number of results must be positive, got " + n));
+                fetch();
+                return;
+            }
+            requested.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            fetch();
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            release();
+        }
+
+        /**
+         * Stops the backpressure for a cancelled subscription and the server-side stream if possible, otherwise drops
+         * the remaining results as they arrive.
+         */
+        private void release() {
+            final ResultSet results = resultSet;
+            final SigV4WebSocketChannelizer c = channelizer;
+            if (results == null || c == null) {
+                return;
+            }
+
+            final UUID requestId = results.getOriginalRequestMessage().getRequestId();
+            c.getReadBackpressureHandler().unregister(requestId);
+            if (!results.allItemsAvailable() && c.isPending(requestId) && c.getPendingCount() == 1) {
+                log.debug("Closing {} to stop streaming the results of cancelled request {}", c.getChannel(),
+                        requestId);
+                c.getChannel().close();
+                return;
+            }
+            discard(results);
+        }
+
+        /**
+         * Reads and drops the remaining results of a cancelled subscription in batches of at most {@code prefetch},
+         * so that they do not pile up in the {@link ResultSet} until the server has sent them all.
+         * @param results the results.
+         */
+        private void discard(final ResultSet results) {
+            results.some(prefetch).whenCompleteAsync((batch, t) -> {
+                if (t == null && !batch.isEmpty()) {
+                    discard(results);
+                }
+            }, executor);
+        }
+
+        /**
+         * Called once the script has been submitted.
+         * @param results the results, null if the submission failed.
+         * @param t the cause of the failure, null if the submission succeeded.
+         */
+        void onSubmitted(final ResultSet results, final Throwable t) {
+            if (t != null) {
+                failure.compareAndSet(null, unwrap(t));
+                fetch();
+                return;
+            }
+
+            final UUID requestId = results.getOriginalRequestMessage().getRequestId();
+            final Optional<SigV4WebSocketChannelizer> c =
+                    SigV4ConnectionRegistry.channelizerFor(client.getCluster(), requestId);
+            if (c.isPresent()) {
+                final ReadBackpressureHandler backpressure = c.get().getReadBackpressureHandler();
+                backpressure.register(requestId, () -> results.getAvailableItemCount() >= prefetch);
+                results.allItemsAvailableAsync().whenComplete((v, e) -> backpressure.unregister(requestId));
+                channelizer = c.get();
+            }
+            resultSet = results;
+
+            if (cancelled) {
+                // Cancelled while the submission was in flight.
+                release();
+                return;
+            }
+            fetch();
+        }
+
+        /**
+         * Signals a pending failure, or fetches and emits batches of results while there is demand. Only one thread
+         * runs this at a time, so the signals to the subscriber are serialized. Batches that are already buffered are
+         * emitted in a loop rather than recursively; otherwise the emission continues once the batch has arrived.
+         */
+        private void fetch() {
+            if (!fetching.compareAndSet(false, true)) {
+                return;
+            }
+
+            while (true) {
+                if (cancelled || done.get()) {
+                    return;
+                }
+                final Throwable error = failure.get();
+                if (error != null) {
+                    cancel();
+                    terminate(error);
+                    return;
+                }
+                final long demand = requested.get();
+                if (resultSet == null || demand == 0) {
+                    fetching.set(false);
+                    // A failure, the results or demand may have arrived between the check and the reset.
+                    if (hasWork() && fetching.compareAndSet(false, true)) {
+                        continue;
+                    }
+                    return;
+                }
+
+                final int batchSize = (int) Math.min(demand, prefetch);
+                final CompletableFuture<List<Result>> batch = resultSet.some(batchSize);
+                if (!batch.isDone()) {
+                    batch.whenCompleteAsync((results, t) -> {
+                        if (emit(results, t)) {
+                            fetching.set(false);
+                            fetch();
+                        }
+                    }, executor);
+                    return;
+                }
+
+                List<Result> results = null;
+                Throwable failure = null;
+                try {
+                    results = batch.join();
+                } catch (CompletionException e) {
+                    failure = e;
+                }
+                if (!emit(results, failure)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return whether a failure is pending or results can be emitted.
+         */
+        private boolean hasWork() {
+            return failure.get() != null || (resultSet != null && requested.get() > 0);
+        }
+
+        /**
+         * Emits a batch of results and completes the subscription once all results have been emitted.
+         * @param results the batch.
+         * @param t the failure of the request, if any.
+         * @return whether more results may follow.
+         */
+        private boolean emit(final List<Result> results, final Throwable t) {
+            if (t != null) {
+                terminate(unwrap(t));
+                return false;
+            }
+
+            for (Result result : results) {
+                if (cancelled) {
+                    return false;
+                }
+                subscriber.onNext(result);
+                requested.accumulateAndGet(1, (current, emitted) ->
+                        current == Long.MAX_VALUE ? current : current - emitted);
+            }
+
+            final SigV4WebSocketChannelizer c = channelizer;
+            if (c != null) {
+                c.getReadBackpressureHandler().resume();
+            }
+
+            final CompletableFuture<Void> readCompleted = resultSet.allItemsAvailableAsync();
+            if (readCompleted.isDone() && resultSet.getAvailableItemCount() == 0) {
+                try {
+                    readCompleted.join();
+                    terminate(null);
+                } catch (CompletionException e) {
+                    terminate(unwrap(e));
+                }
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Sends the terminal signal, at most once.
+         * @param t the failure, null on completion.
+         */
+        private void terminate(final Throwable t) {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            if (cancelled && t == null) {
+                return;
+            }
+            if (t == null) {
+                subscriber.onComplete();
+            } else {
+                subscriber.onError(t);
+            }
+        }
+    }
+
+    /**
+     * @param t a failure, possibly wrapped by a {@link CompletableFuture}.
+     * @return the actual failure.
+     */
+    private static Throwable unwrap(final Throwable t) {
+        return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ *   Copyright 2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package org.apache.tinkerpop.gremlin.driver;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Access to virtual threads. This is the Java 8 version, for runtimes without virtual threads; the multi-release jar
+ * carries the Java 21 version under {@code META-INF/versions/21}.
+ */
+final class SigV4VirtualThreads {
+    /**
+     * Default private constructor.
+     */
+    private SigV4VirtualThreads() {
+
+    }
+
+    /**
+     * @param thread a thread.
+     * @return whether the thread is a virtual thread, always false on this runtime.
+     */
+    static boolean isVirtual(final Thread thread) {
+        return false;
+    }
+
+    /**
+     * @return an executor starting a new virtual thread per task, empty on this runtime.
+     */
+    static Optional<ExecutorService> newVirtualThreadPerTaskExecutor() {
+        return Optional.empty();
+    }
+}
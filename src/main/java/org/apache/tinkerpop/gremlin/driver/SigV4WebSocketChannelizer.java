@@ -34,13 +34,16 @@
 
 package org.apache.tinkerpop.gremlin.driver;
 
+import com.amazon.neptune.gremlin.driver.handler.PingPongKeepAliveHandler;
+import com.amazon.neptune.gremlin.driver.handler.ReadBackpressureHandler;
+import com.amazon.neptune.gremlin.driver.script.ScriptParameterizer;
 import com.amazon.neptune.gremlin.driver.sigv4.AwsSigV4ClientHandshaker;
-import com.amazon.neptune.gremlin.driver.sigv4.ChainedSigV4PropertiesProvider;
 
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
 
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelPipeline;
 import io.netty.handler.codec.http.EmptyHttpHeaders;
 import io.netty.handler.codec.http.HttpClientCodec;
@@ -53,10 +56,20 @@ import io.netty.handler.codec.http.websocketx.extensions.compression.WebSocketCl
 import org.apache.tinkerpop.gremlin.driver.Channelizer.AbstractChannelizer;
 import org.apache.tinkerpop.gremlin.driver.exception.ConnectionException;
 import org.apache.tinkerpop.gremlin.driver.handler.WebSocketClientHandler;
-import org.apache.tinkerpop.gremlin.driver.handler.WebSocketGremlinRequestEncoder;
-import org.apache.tinkerpop.gremlin.driver.handler.WebSocketGremlinResponseDecoder;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * An {@link AbstractChannelizer}, with most of the code from {@link WebSocketChannelizer}. Except it uses a
@@ -66,6 +79,7 @@ import java.util.concurrent.TimeoutException;
  * @see <a href="https://github.com/apache/tinkerpop/blob/master/gremlin-driver/src/main/java/org/apache/tinkerpop/gremlin/driver/Channelizer.java">
  *      https://github.com/apache/tinkerpop/blob/master/gremlin-driver/src/main/java/org/apache/tinkerpop/gremlin/driver/Channelizer.java</a>
  */
+@Slf4j
 public class SigV4WebSocketChannelizer extends AbstractChannelizer {
     /**
      * Constant to denote the websocket protocol.
@@ -107,20 +121,72 @@ public class SigV4WebSocketChannelizer extends AbstractChannelizer {
      */
     public static final String WEBSOCKET_COMPRESSION_HANDLER = "web-socket-compression-handler";
 
+    /**
+     * Name of the ping/pong keep-alive handler.
+     */
+    public static final String KEEP_ALIVE_HANDLER = "keep-alive-handler";
+
+    /**
+     * Name of the read backpressure handler.
+     */
+    public static final String READ_BACKPRESSURE_HANDLER = "read-backpressure-handler";
+
+    /**
+     * Name of the script parameterizing handler.
+     */
+    public static final String SCRIPT_PARAMETERIZING_HANDLER = "script-parameterizing-handler";
+
+    /**
+     * Default quiet period after which a connection with requests in flight is pinged.
+     */
+    public static final long DEFAULT_BUSY_KEEP_ALIVE_INTERVAL_MILLIS = 5000;
+
+    /**
+     * Default time to wait for a pong before a connection is considered dead.
+     */
+    public static final long DEFAULT_PONG_TIMEOUT_MILLIS = 10000;
+
+    /**
+     * Interval at which a draining connection is checked for outstanding responses.
+     */
+    private static final long DRAIN_CHECK_INTERVAL_MILLIS = 50;
+
+    /**
+     * Added to the borrow count of a draining connection, so that the pool never picks it as the least used
+     * connection while another one is available and opens a new connection instead when it needs more capacity.
+     */
+    private static final int DRAINING_BORROW_WEIGHT = Integer.MAX_VALUE / 2;
+
     /**
      * The handler to process websocket messages from the server.
      */
     private WebSocketClientHandler handler;
 
     /**
-     * Encoder to encode websocket requests.
+     * The components shared by the connections of the cluster: the handshake signer, the encoder and decoder of the
+     * websocket messages and the script parameterizing handler.
+     */
+    private SigV4ClusterComponents components;
+
+    /**
+     * The handler sending the keep-alive pings and tracking the pong round-trip time, null if keep-alive is disabled.
+     */
+    private PingPongKeepAliveHandler keepAliveHandler;
+
+    /**
+     * The handler pausing reads while streaming consumers are saturated.
+     */
+    private ReadBackpressureHandler readBackpressureHandler;
+
+    /**
+     * The channel of the connection.
      */
-    private WebSocketGremlinRequestEncoder webSocketGremlinRequestEncoder;
+    private Channel channel;
 
     /**
-     * Decoder to decode websocket requests.
+     * Completes once the connection has been drained and closed, null until draining starts.
      */
-    private WebSocketGremlinResponseDecoder webSocketGremlinResponseDecoder;
+    private final AtomicReference<CompletableFuture<Void>> drained = new AtomicReference<>();
 
     /**
      * Initializes the channelizer.
@@ -129,26 +195,64 @@ public class SigV4WebSocketChannelizer extends AbstractChannelizer {
     @Override
     public void init(final Connection connection) {
         super.init(connection);
-        webSocketGremlinRequestEncoder = new WebSocketGremlinRequestEncoder(true, cluster.getSerializer());
-        webSocketGremlinResponseDecoder = new WebSocketGremlinResponseDecoder(cluster.getSerializer());
+        components = SigV4ClusterComponents.of(cluster, this::getCredentialsProvider,
+                this::createScriptParameterizer);
     }
 
     /**
-     * Keep-alive is supported through the ping/pong websocket protocol.
+     * Keep-alive is supported through the ping/pong websocket protocol, but it is driven by the
+     * {@link PingPongKeepAliveHandler} of this channelizer rather than the fixed schedule of the {@link Connection}.
+     * The handler pings after {@link #getIdleKeepAliveIntervalMillis()} of silence when the connection is idle and
+     * after {@link #getBusyKeepAliveIntervalMillis()} when requests are in flight, and closes the connection when the
+     * pong is late or missing.
      * @see <a href=https://tools.ietf.org/html/rfc6455#section-5.5.2>IETF RFC 6455</a>
      */
     @Override
     public boolean supportsKeepAlive() {
-        return true;
+        return false;
     }
 
     @Override
     public Object createKeepAliveMessage() {
-        return new PingWebSocketFrame();
+        return keepAliveHandler != null ? keepAliveHandler.newPing() : new PingWebSocketFrame();
     }
 
     /**
-     * Sends a {@code CloseWebSocketFrame} to the server for the specified channel.
+     * @return the round-trip time of the last keep-alive pong of this connection in nanos, or
+     * {@link PingPongKeepAliveHandler#NO_ROUND_TRIP} if none was received yet.
+     */
+    public long getLastPongRoundTripNanos() {
+        return keepAliveHandler != null ? keepAliveHandler.getLastRoundTripNanos()
+                : PingPongKeepAliveHandler.NO_ROUND_TRIP;
+    }
+
+    /**
+     * @return the smoothed keep-alive pong round-trip time of this connection in nanos, or
+     * {@link PingPongKeepAliveHandler#NO_ROUND_TRIP} if none was received yet.
+     */
+    public long getSmoothedPongRoundTripNanos() {
+        return keepAliveHandler != null ? keepAliveHandler.getSmoothedRoundTripNanos()
+                : PingPongKeepAliveHandler.NO_ROUND_TRIP;
+    }
+
+    /**
+     * Gets the smoothed keep-alive pong round-trip time of every open connection of a cluster that uses this
+     * channelizer.
+     * @param cluster the cluster.
+     * @return the round-trip times in nanos keyed by connection channel id.
+     */
+    public static Map<String, Long> getPongRoundTripTimes(final Cluster cluster) {
+        final Map<String, Long> roundTripTimes = new HashMap<>();
+        for (SigV4WebSocketChannelizer channelizer : SigV4ConnectionRegistry.channelizers(cluster)) {
+            roundTripTimes.put(channelizer.connection.getChannelId(), channelizer.getSmoothedPongRoundTripNanos());
+        }
+        return Collections.unmodifiableMap(roundTripTimes);
+    }
+
+    /**
+     * Sends a {@code CloseWebSocketFrame} to the server for the specified channel. The {@link Connection} has already
+     * waited for its pending requests, up to the max wait for close of the cluster, when it calls this; use
+     * {@link #drain(long)} or {@link #drainAll(Cluster, long)} to also stop routing new requests to the connection.
      */
     @Override
     public void close(final Channel channel) {
@@ -157,6 +261,120 @@ public class SigV4WebSocketChannelizer extends AbstractChannelizer {
         }
     }
 
+    /**
+     * Drains the connection: the pool stops routing new requests to it, the requests in flight are given up to the
+     * specified timeout to be answered, then a {@code CloseWebSocketFrame} is sent and the connection is closed. The
+     * pool replaces the closed connection as needed. Draining an already draining connection has no further effect.
+     * @param timeoutMillis the time to wait for the requests in flight, after which they fail with the closed
+     * connection.
+     * @return a future completing once the connection has been closed.
+     */
+    public CompletableFuture<Void> drain(final long timeoutMillis) {
+        final CompletableFuture<Void> closed = new CompletableFuture<>();
+        if (!drained.compareAndSet(null, closed)) {
+            return drained.get();
+        }
+        if (channel == null) {
+            closed.complete(null);
+            return closed;
+        }
+
+        connection.borrowed.addAndGet(DRAINING_BORROW_WEIGHT);
+        channel.closeFuture().addListener(f -> {
+            // Requests still in flight fail with the closed channel, and the driver replaces the connection then.
+            if (getPendingCount() == 0) {
+                cluster.executor().execute(this::replaceConnection);
+            }
+            closed.complete(null);
+        });
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        channel.eventLoop().execute(() -> closeWhenDrained(deadline));
+        return closed;
+    }
+
+    /**
+     * @return whether the connection is draining or drained.
+     */
+    public boolean isDraining() {
+        return drained.get() != null;
+    }
+
+    /**
+     * Drains every open connection of a cluster that uses this channelizer, see {@link #drain(long)}. Call this ahead
+     * of {@link Cluster#close()} on shutdown or scale-in, so that requests in flight complete instead of failing.
+     * Connections opened afterwards, e.g. to replace the drained ones, are not drained.
+     * @param cluster the cluster.
+     * @param timeoutMillis the time to wait for the requests in flight on each connection.
+     * @return a future completing once all the connections have been closed.
+     */
+    public static CompletableFuture<Void> drainAll(final Cluster cluster, final long timeoutMillis) {
+        final Collection<SigV4WebSocketChannelizer> channelizers = SigV4ConnectionRegistry.channelizers(cluster);
+        final List<CompletableFuture<Void>> closed = new ArrayList<>(channelizers.size());
+        for (SigV4WebSocketChannelizer channelizer : channelizers) {
+            closed.add(channelizer.drain(timeoutMillis));
+        }
+        return CompletableFuture.allOf(closed.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Gets the drain progress of the open connections of a cluster that uses this channelizer.
+     * @param cluster the cluster.
+     * @return the number of open and draining connections and of the requests still in flight on the latter.
+     */
+    public static SigV4DrainProgress getDrainProgress(final Cluster cluster) {
+        int open = 0;
+        int draining = 0;
+        int pending = 0;
+        for (SigV4WebSocketChannelizer channelizer : SigV4ConnectionRegistry.channelizers(cluster)) {
+            open++;
+            if (channelizer.isDraining()) {
+                draining++;
+                pending += channelizer.getPendingCount();
+            }
+        }
+        return new SigV4DrainProgress(open, draining, pending);
+    }
+
+    /**
+     * Replaces the connection in the pool of its client after a failed keep-alive or once drained, so that the dead
+     * connection does not keep counting towards the pool size. The pool is only reachable for a
+     * {@link Client.ClusteredClient}; the connection of a session is only closed.
+     */
+    private void replaceConnection() {
+        final Client client = connection.getClient();
+        if (!(client instanceof Client.ClusteredClient) || connection.isBeingReplaced.get()) {
+            return;
+        }
+        for (ConnectionPool pool : ((Client.ClusteredClient) client).hostConnectionPools.values()) {
+            if (pool.getConnectionIDs().contains(connection.getChannelId())) {
+                pool.replaceConnection(connection);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Closes the draining connection once no requests are in flight anymore or the deadline has passed, checking
+     * again later otherwise. Runs on the event loop of the channel.
+     * @param deadline the deadline in {@link System#nanoTime()} terms.
+     */
+    private void closeWhenDrained(final long deadline) {
+        if (!channel.isActive()) {
+            return;
+        }
+
+        final int pending = getPendingCount();
+        if (pending > 0 && System.nanoTime() - deadline < 0) {
+            channel.eventLoop().schedule(() -> closeWhenDrained(deadline), DRAIN_CHECK_INTERVAL_MILLIS,
+                    TimeUnit.MILLISECONDS);
+            return;
+        }
+        if (pending > 0) {
+            log.warn("Closing {} with {} requests still in flight after the drain timeout", channel, pending);
+        }
+        channel.writeAndFlush(new CloseWebSocketFrame()).addListener(ChannelFutureListener.CLOSE);
+    }
+
     @Override
     public boolean supportsSsl() {
         final String scheme = connection.getUri().getScheme();
@@ -179,14 +397,31 @@ public class SigV4WebSocketChannelizer extends AbstractChannelizer {
 
         final int maxContentLength = cluster.connectionPoolSettings().maxContentLength;
         handler = createHandler();
+        channel = pipeline.channel();
 
         pipeline.addLast(HTTP_CODEC, new HttpClientCodec());
         pipeline.addLast(AGGREGATOR, new HttpObjectAggregator(maxContentLength));
         // Add compression extension for WebSocket defined in https://tools.ietf.org/html/rfc7692
         pipeline.addLast(WEBSOCKET_COMPRESSION_HANDLER, WebSocketClientCompressionHandler.INSTANCE);
+        // The keep-alive handler has to see the pongs before the websocket handler drops them.
+        if (cluster.connectionPoolSettings().keepAliveInterval > 0) {
+            keepAliveHandler = new PingPongKeepAliveHandler(
+                    getIdleKeepAliveIntervalMillis(),
+                    getBusyKeepAliveIntervalMillis(),
+                    getPongTimeoutMillis(),
+                    () -> !connection.getPending().isEmpty(),
+                    () -> cluster.executor().execute(this::replaceConnection));
+            pipeline.addLast(KEEP_ALIVE_HANDLER, keepAliveHandler);
+        }
         pipeline.addLast(WEB_SOCKET_HANDLER, handler);
-        pipeline.addLast(GREMLIN_ENCODER, webSocketGremlinRequestEncoder);
-        pipeline.addLast(GRELIN_DECODER, webSocketGremlinResponseDecoder);
+        pipeline.addLast(GREMLIN_ENCODER, components.getRequestEncoder());
+        pipeline.addLast(GRELIN_DECODER, components.getResponseDecoder());
+        readBackpressureHandler = new ReadBackpressureHandler();
+        pipeline.addLast(READ_BACKPRESSURE_HANDLER, readBackpressureHandler);
+        // Outbound requests pass the parameterizing handler before the encoder.
+        if (components.getScriptParameterizingHandler() != null) {
+            pipeline.addLast(SCRIPT_PARAMETERIZING_HANDLER, components.getScriptParameterizingHandler());
+        }
     }
 
     @Override
@@ -216,11 +451,88 @@ public class SigV4WebSocketChannelizer extends AbstractChannelizer {
             }
             throw new ConnectionException(connection.getUri(), errMsg, ex);
         }
+
+        if (keepAliveHandler != null) {
+            keepAliveHandler.start();
+        }
+        SigV4ConnectionRegistry.register(cluster, this);
+        channel.closeFuture().addListener(f -> SigV4ConnectionRegistry.unregister(cluster, this));
+    }
+
+    /**
+     * @param requestId the id of a request.
+     * @return whether the request is waiting for (more of) its response on this connection.
+     */
+    boolean isPending(final UUID requestId) {
+        return connection.getPending().containsKey(requestId);
+    }
+
+    /**
+     * @return the number of requests waiting for (more of) their response on this connection.
+     */
+    int getPendingCount() {
+        return connection.getPending().size();
+    }
+
+    /**
+     * @return the handler pausing reads while streaming consumers are saturated.
+     */
+    ReadBackpressureHandler getReadBackpressureHandler() {
+        return readBackpressureHandler;
+    }
+
+    /**
+     * @return the channel of the connection.
+     */
+    Channel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Quiet period after which an idle connection is pinged. Defaults to the keep-alive interval of the cluster.
+     * Override to customize.
+     *
+     * @return the idle keep-alive interval in millis.
+     */
+    protected long getIdleKeepAliveIntervalMillis() {
+        return cluster.connectionPoolSettings().keepAliveInterval;
+    }
+
+    /**
+     * Quiet period after which a connection with requests in flight is pinged, so that half-open connections are
+     * detected before the requests time out. Override to customize.
+     *
+     * @return the busy keep-alive interval in millis.
+     */
+    protected long getBusyKeepAliveIntervalMillis() {
+        return DEFAULT_BUSY_KEEP_ALIVE_INTERVAL_MILLIS;
+    }
+
+    /**
+     * Time to wait for a keep-alive pong before the connection is closed and replaced. Override to customize.
+     *
+     * @return the pong timeout in millis.
+     */
+    protected long getPongTimeoutMillis() {
+        return DEFAULT_PONG_TIMEOUT_MILLIS;
+    }
+
+    /**
+     * Creates the {@link ScriptParameterizer} that rewrites the literals of the submitted scripts into bindings, so
+     * that scripts of the same shape hit the script cache of the server. It is called once per {@link Cluster}, the
+     * parameterizer is shared by all the connections of the cluster. Disabled by default, override to return a
+     * parameterizer to enable. {@link SigV4ClusterComponents#getScriptParameterizer(Cluster)} returns it for reporting.
+     *
+     * @return the script parameterizer, or null to submit the scripts as they are.
+     */
+    protected ScriptParameterizer createScriptParameterizer() {
+        return null;
     }
 
     /**
      * This protected method provides a way for customizing the channelize through inheritance
-     * to override credentials used to establish sign requests
+     * to override credentials used to establish sign requests. It is called once per {@link Cluster}, the provider
+     * is shared by all the connections of the cluster.
      *
      * @return credentials provider that will be used to generate SigV4 signatures
      */
@@ -242,8 +554,7 @@ public class SigV4WebSocketChannelizer extends AbstractChannelizer {
                 true, // allow extensions to support WebSocket compression
                 EmptyHttpHeaders.INSTANCE,
                 cluster.getMaxContentLength(),
-                new ChainedSigV4PropertiesProvider(),
-                getCredentialsProvider());
+                components.getHandshakeSigner());
         return new WebSocketClientHandler(handshaker, cluster.getConnectionSetupTimeout());
     }
 }
@@ -0,0 +1,48 @@
+/*
+ *   Copyright 2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package org.apache.tinkerpop.gremlin.driver;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads. This is the Java 21 version, loaded from {@code META-INF/versions/21} of the
+ * multi-release jar.
+ */
+final class SigV4VirtualThreads {
+    /**
+     * Default private constructor.
+     */
+    private SigV4VirtualThreads() {
+
+    }
+
+    /**
+     * @param thread a thread.
+     * @return whether the thread is a virtual thread.
+     */
+    static boolean isVirtual(final Thread thread) {
+        return thread.isVirtual();
+    }
+
+    /**
+     * @return an executor starting a new virtual thread per task.
+     */
+    static Optional<ExecutorService> newVirtualThreadPerTaskExecutor() {
+        return Optional.of(Executors.newVirtualThreadPerTaskExecutor());
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ *   Copyright 2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.neptune.gremlin.driver.script;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.amazon.neptune.gremlin.driver.script.ScriptParameterizer.ParameterizedScript;
+
+/**
+ * Tests the rewrite of script literals into bindings by {@link ScriptParameterizer}.
+ */
+public class ScriptParameterizerTest {
+    /**
+     * The parameterizer under test.
+     */
+    private final ScriptParameterizer parameterizer = new ScriptParameterizer();
+
+    @Test
+    public void testStringsAndNumbers() {
+        final ParameterizedScript result = parameterize("g.V('id-123').has(\"age\", gt(30))");
+        assertEquals("g.V(_lit0).has(_lit1, gt(_lit2))", result.getScript());
+        assertEquals(bindings("_lit0", "id-123", "_lit1", "age", "_lit2", 30), result.getBindings());
+    }
+
+    @Test
+    public void testQuotedMapKeys() {
+        final ParameterizedScript result = parameterize("g.inject(['name':'marko', 'age': 29, 1 : 'one'])");
+        assertEquals("g.inject([(_lit0):_lit1, (_lit2): _lit3, (_lit4) : _lit5])", result.getScript());
+        assertEquals(bindings("_lit0", "name", "_lit1", "marko", "_lit2", "age", "_lit3", 29, "_lit4", 1,
+                "_lit5", "one"), result.getBindings());
+    }
+
+    @Test
+    public void testRangeLeftLiteral() {
+        final ParameterizedScript result = parameterize("g.V().range(1..5).has('x', 2)");
+        assertEquals("g.V().range(1..5).has(_lit0, _lit1)", result.getScript());
+        assertEquals(bindings("_lit0", "x", "_lit1", 2), result.getBindings());
+    }
+
+    @Test
+    public void testNegativeNumberKeepsOperator() {
+        final ParameterizedScript result = parameterize("g.V().has('x', -1)");
+        assertEquals("g.V().has(_lit0, -_lit1)", result.getScript());
+        assertEquals(bindings("_lit0", "x", "_lit1", 1), result.getBindings());
+    }
+
+    @Test
+    public void testHexOctalAndUnderscoreLeftLiteral() {
+        final ParameterizedScript result = parameterize("g.inject(0x1F, 010, 1_000, 7)");
+        assertEquals("g.inject(0x1F, 010, 1_000, _lit0)", result.getScript());
+        assertEquals(bindings("_lit0", 7), result.getBindings());
+    }
+
+    @Test
+    public void testInterpolatedStringLeftLiteral() {
+        final ParameterizedScript result = parameterize("g.V(\"${id}\").has('name', \"cost \\$5\")");
+        assertEquals("g.V(\"${id}\").has(_lit0, _lit1)", result.getScript());
+        assertEquals(bindings("_lit0", "name", "_lit1", "cost $5"), result.getBindings());
+    }
+
+    @Test
+    public void testCommentsCopied() {
+        final ParameterizedScript result = parameterize("g.V('a') // 'b' 1\n/* 'c' 2 */ .has('d')");
+        assertEquals("g.V(_lit0) // 'b' 1\n/* 'c' 2 */ .has(_lit1)", result.getScript());
+        assertEquals(bindings("_lit0", "a", "_lit1", "d"), result.getBindings());
+    }
+
+    @Test
+    public void testTripleQuotedStringUnchanged() {
+        assertUnchanged("g.V('a').property('text', '''multi\nline''')");
+        assertUnchanged("g.V('a').property('text', \"\"\"multi\nline\"\"\")");
+    }
+
+    @Test
+    public void testSlashyStringUnchanged() {
+        assertUnchanged("g.V().has('n', TextP.regex(/a'b'c/))");
+        assertUnchanged("g.V().has('n', TextP.regex($/a'b'c/$))");
+        assertUnchanged("g.V().has('n', 4 / 2)");
+    }
+
+    @Test
+    public void testQuotedMemberNameLeftLiteral() {
+        final ParameterizedScript result = parameterize("m.'a' + m?.\"b\" + m.&'c' + m.@'d' + m. 'e' + 'f'");
+        assertEquals("m.'a' + m?.\"b\" + m.&'c' + m.@'d' + m. 'e' + _lit0", result.getScript());
+        assertEquals(bindings("_lit0", "f"), result.getBindings());
+    }
+
+    @Test
+    public void testUnterminatedStringUnchanged() {
+        assertUnchanged("g.V('a').has('name");
+    }
+
+    @Test
+    public void testExistingBindingNamesUnchanged() {
+        assertUnchanged("g.V(_lit0).has('name', 'marko')");
+
+        final Map<String, Object> bindings = bindings("_lit0", "x");
+        final ParameterizedScript result = parameterizer.parameterize("g.V('a')", bindings);
+        assertEquals("g.V('a')", result.getScript());
+        assertSame(bindings, result.getBindings());
+    }
+
+    @Test
+    public void testExistingBindingsKept() {
+        final ParameterizedScript result = parameterizer.parameterize("g.V(x).has('age', 30)", bindings("x", 1));
+        assertEquals("g.V(x).has(_lit0, _lit1)", result.getScript());
+        assertEquals(bindings("x", 1, "_lit0", "age", "_lit1", 30), result.getBindings());
+    }
+
+    @Test
+    public void testNumberTypes() {
+        final ParameterizedScript result = parameterize(
+                "g.inject(1, 3000000000, 10000000000000000000, 1.5, 2e3, 1i, 1L, 1G, 1.5G, 1.5d, 1.5f)");
+        assertEquals("g.inject(_lit0, _lit1, _lit2, _lit3, _lit4, _lit5, _lit6, _lit7, _lit8, _lit9, _lit10)",
+                result.getScript());
+        final Map<String, Object> bindings = result.getBindings();
+        assertTyped(1, bindings.get("_lit0"));
+        assertTyped(3000000000L, bindings.get("_lit1"));
+        assertTyped(new BigInteger("10000000000000000000"), bindings.get("_lit2"));
+        assertTyped(new BigDecimal("1.5"), bindings.get("_lit3"));
+        assertTyped(new BigDecimal("2e3"), bindings.get("_lit4"));
+        assertTyped(1, bindings.get("_lit5"));
+        assertTyped(1L, bindings.get("_lit6"));
+        assertTyped(BigInteger.ONE, bindings.get("_lit7"));
+        assertTyped(new BigDecimal("1.5"), bindings.get("_lit8"));
+        assertTyped(1.5d, bindings.get("_lit9"));
+        assertTyped(1.5f, bindings.get("_lit10"));
+    }
+
+    @Test
+    public void testTemplateCountsAndCache() {
+        parameterize("g.V('a')");
+        parameterize("g.V('b')");
+        parameterize("g.V('a')");
+        assertEquals(1, parameterizer.getTemplateCardinality());
+        assertEquals(Collections.singletonMap("g.V(_lit0)", 3L), parameterizer.getTemplateCounts());
+        assertEquals(1, parameterizer.getCacheHitCount());
+        assertEquals(2, parameterizer.getCacheMissCount());
+    }
+
+    /**
+     * @param script a script.
+     * @return the script parameterized without bindings.
+     */
+    private ParameterizedScript parameterize(final String script) {
+        return parameterizer.parameterize(script, Collections.emptyMap());
+    }
+
+    /**
+     * Asserts that a script and its bindings are left as they are.
+     * @param script the script.
+     */
+    private void assertUnchanged(final String script) {
+        final Map<String, Object> bindings = Collections.emptyMap();
+        final ParameterizedScript result = parameterizer.parameterize(script, bindings);
+        assertEquals(script, result.getScript());
+        assertSame(bindings, result.getBindings());
+    }
+
+    /**
+     * Asserts that a binding has the expected value and type.
+     * @param expected the expected value.
+     * @param actual the binding.
+     */
+    private static void assertTyped(final Object expected, final Object actual) {
+        assertEquals(expected, actual);
+        assertEquals(expected.getClass(), actual.getClass());
+    }
+
+    /**
+     * @param namesAndValues alternating binding names and values.
+     * @return the bindings.
+     */
+    private static Map<String, Object> bindings(final Object... namesAndValues) {
+        final Map<String, Object> bindings = new HashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            bindings.put((String) namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return bindings;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ *   Copyright 2018 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package org.apache.tinkerpop.gremlin.driver;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.apache.tinkerpop.gremlin.driver.handler.WebSocketClientHandler;
+import org.apache.tinkerpop.gremlin.driver.handler.WebSocketGremlinRequestEncoder;
+import org.apache.tinkerpop.gremlin.driver.handler.WebSocketGremlinResponseDecoder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazon.neptune.gremlin.driver.sigv4.AwsSigV4ClientHandshaker;
+import com.amazon.neptune.gremlin.driver.sigv4.ChainedSigV4PropertiesProvider;
+import com.amazon.neptune.gremlin.driver.sigv4.SigV4Properties;
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.EmptyHttpHeaders;
+import io.netty.handler.codec.http.websocketx.WebSocketVersion;
+
+/**
+ * Tests that the components shared by the connections of a cluster through {@link SigV4ClusterComponents} retain
+ * less heap than the per-connection components they replace.
+ */
+public class SigV4ClusterComponentsTest {
+    /**
+     * Number of connection pipelines built for each measurement.
+     */
+    private static final int CONNECTIONS = 10000;
+
+    /**
+     * Websocket endpoint of the handshakes, never connected to.
+     */
+    private static final URI ENDPOINT = URI.create("wss://localhost:8182/gremlin");
+
+    /**
+     * The cluster the components are shared by, never connected.
+     */
+    private Cluster cluster;
+
+    /**
+     * Value of the region property before the test, restored afterwards.
+     */
+    private String previousRegion;
+
+    @Before
+    public void setUp() {
+        previousRegion = System.setProperty(SigV4Properties.SERVICE_REGION, "us-east-1");
+        cluster = Cluster.build("localhost").create();
+    }
+
+    @After
+    public void tearDown() {
+        cluster.close();
+        if (previousRegion == null) {
+            System.clearProperty(SigV4Properties.SERVICE_REGION);
+        } else {
+            System.setProperty(SigV4Properties.SERVICE_REGION, previousRegion);
+        }
+    }
+
+    @Test
+    public void testComponentsSharedByCluster() {
+        final SigV4ClusterComponents components =
+                SigV4ClusterComponents.of(cluster, DefaultAWSCredentialsProviderChain::new, () -> null);
+        assertSame(components, SigV4ClusterComponents.of(cluster, DefaultAWSCredentialsProviderChain::new, () -> null));
+    }
+
+    @Test
+    public void testSharedComponentsRetainLessHeap() {
+        // Each connection used to get its own encoder, decoder and credentials provider, and its handshaker loaded the
+        // SigV4 properties.
+        final MessageSerializer serializer = cluster.getSerializer();
+        final long perConnection = retainedBytesPerPipeline(() -> new ChannelHandler[] {
+            webSocketClientHandler(new AwsSigV4ClientHandshaker(ENDPOINT, WebSocketVersion.V13, null, true,
+                    EmptyHttpHeaders.INSTANCE, cluster.getMaxContentLength(), new ChainedSigV4PropertiesProvider(),
+                    new DefaultAWSCredentialsProviderChain())),
+            new WebSocketGremlinRequestEncoder(true, serializer),
+            new WebSocketGremlinResponseDecoder(serializer)
+        });
+
+        final SigV4ClusterComponents components =
+                SigV4ClusterComponents.of(cluster, DefaultAWSCredentialsProviderChain::new, () -> null);
+        final long shared = retainedBytesPerPipeline(() -> new ChannelHandler[] {
+            webSocketClientHandler(new AwsSigV4ClientHandshaker(ENDPOINT, WebSocketVersion.V13, null, true,
+                    EmptyHttpHeaders.INSTANCE, cluster.getMaxContentLength(), components.getHandshakeSigner())),
+            components.getRequestEncoder(),
+            components.getResponseDecoder()
+        });
+
+        assertTrue(String.format("Shared components retain %s bytes per connection, per-connection ones %s bytes",
+                shared, perConnection), shared < perConnection);
+    }
+
+    /**
+     * @param handshaker the handshaker of the connection.
+     * @return the handler driving the handshake, as created by the channelizer.
+     */
+    private WebSocketClientHandler webSocketClientHandler(final AwsSigV4ClientHandshaker handshaker) {
+        return new WebSocketClientHandler(handshaker, cluster.getConnectionSetupTimeout());
+    }
+
+    /**
+     * Builds {@link #CONNECTIONS} unregistered pipelines, so that no handshake is started, and measures the heap they
+     * retain.
+     * @param handlers creates the handlers of a pipeline.
+     * @return the heap retained per pipeline, in bytes.
+     */
+    private static long retainedBytesPerPipeline(final Supplier<ChannelHandler[]> handlers) {
+        final List<EmbeddedChannel> channels = new ArrayList<>(CONNECTIONS);
+        final long before = usedHeapAfterGc();
+        for (int i = 0; i < CONNECTIONS; i++) {
+            channels.add(new EmbeddedChannel(false, false, handlers.get()));
+        }
+        final long after = usedHeapAfterGc();
+        // Keeps the pipelines reachable until the heap has been measured.
+        return (after - before) / channels.size();
+    }
+
+    /**
+     * @return the used heap after garbage collection, in bytes.
+     */
+    private static long usedHeapAfterGc() {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            memory.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}